@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/** Comments shaped like the ones the portfolio stores. */
+final class CommentFixtures {
+
+  private static final long START = 1_590_000_000_000L;
+
+  private CommentFixtures() {}
+
+  /**
+   * Returns the entities of {@link #comments}. Their keys need the local services to be set up on
+   * this thread.
+   */
+  static List<Entity> entities(int count) {
+    List<Entity> entities = new ArrayList<>(count);
+    for (Comment comment : comments(count)) {
+      entities.add(comment.toEntity());
+    }
+    return entities;
+  }
+
+  /** Returns {@code count} comments, one minute apart, the same on every call. */
+  static List<Comment> comments(int count) {
+    Random random = new Random(count);
+    List<Comment> comments = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long timestamp = START + i * 60_000L;
+      String id = new UUID(random.nextLong(), random.nextLong()).toString();
+      comments.add(Comment.builder()
+          .setfirstName("First" + i % 100)
+          .setLastName("Last" + i % 1000)
+          .setCommentText(text(random))
+          .setDate(new Date(timestamp).toString())
+          .setTimestamp(timestamp)
+          .setId(id)
+          .setPath(Comment.pathSegment(timestamp, id))
+          .build());
+    }
+    return comments;
+  }
+
+  /** Returns a comment of 5 to 40 words, about the length of the ones left on the site. */
+  private static String text(Random random) {
+    StringBuilder text = new StringBuilder();
+    int words = 5 + random.nextInt(36);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        text.append(' ');
+      }
+      text.append("word").append(random.nextInt(500));
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of a list of comments, with the generated TypeAdapters of {@link Json} and with
+ * the reflective Gson the servlets used to create for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentJsonBenchmark {
+
+  private static final Gson REFLECTIVE = new Gson();
+
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  private List<Comment> comments;
+
+  @Setup
+  public void setUp() {
+    comments = CommentFixtures.comments(size);
+  }
+
+  /** What every servlet did before: a new Gson, which builds its reflective adapters again. */
+  @Benchmark
+  public String reflectivePerRequest() {
+    return new Gson().toJson(comments);
+  }
+
+  /** Reflective adapters, built once and then found in the Gson adapter cache. */
+  @Benchmark
+  public String reflectiveShared() {
+    return REFLECTIVE.toJson(comments);
+  }
+
+  /** The shared Gson with generated adapters, through the adapter looked up at startup. */
+  @Benchmark
+  public String generated() {
+    return Json.toJson(Json.COMMENTS, comments);
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Mapping Datastore entities to comments through the AutoValue builder. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentMappingBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  private List<Entity> entities;
+
+  @Setup
+  public void setUp() {
+    // Keys can only be made with an App Engine environment, which mapping itself does not need.
+    LocalServiceTestHelper helper = new LocalServiceTestHelper();
+    helper.setUp();
+    try {
+      entities = CommentFixtures.entities(size);
+    } finally {
+      helper.tearDown();
+    }
+  }
+
+  @Benchmark
+  public List<Comment> fromEntity() {
+    List<Comment> mapped = new ArrayList<>(entities.size());
+    for (Entity entity : entities) {
+      mapped.add(Comment.fromEntity(entity));
+    }
+    return mapped;
+  }
+}
@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole of {@link DataServlet#doGet} for a page of {@link DataServlet#MAX_PAGE_SIZE}
+ * comments, read from a local Datastore holding {@code size} comments. The local Datastore is
+ * not the production one, so the numbers are only comparable with each other.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataServletBenchmark {
+
+  /** Entities per put while the Datastore is filled. */
+  private static final int PUT_BATCH_SIZE = 500;
+
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  // The helper binds the local services to the thread that sets it up, which is why this state
+  // is per thread.
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final DataServlet servlet = new DataServlet();
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+
+  /** Bytes written to {@link #response}, returned so the writes cannot be optimized away. */
+  private long bytesWritten;
+
+  @Setup
+  public void setUp() {
+    helper.setUp();
+    List<Entity> entities = CommentFixtures.entities(size);
+    for (int from = 0; from < entities.size(); from += PUT_BATCH_SIZE) {
+      DatastoreServiceFactory.getDatastoreService()
+          .put(entities.subList(from, Math.min(from + PUT_BATCH_SIZE, entities.size())));
+    }
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("page-size", String.valueOf(DataServlet.MAX_PAGE_SIZE));
+    request = request(parameters);
+    response = response();
+  }
+
+  @TearDown
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** A page that is not in the cache, as after every new comment. */
+  @Benchmark
+  public long page() throws IOException {
+    DataServlet.CACHE.invalidate();
+    servlet.doGet(request, response);
+    return bytesWritten;
+  }
+
+  /** A page served from the cache of rendered responses. */
+  @Benchmark
+  public long cachedPage() throws IOException {
+    servlet.doGet(request, response);
+    return bytesWritten;
+  }
+
+  /** Returns a request that only has the given parameters. */
+  private static HttpServletRequest request(Map<String, String> parameters) {
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        HttpServletRequest.class.getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) ->
+            method.getName().equals("getParameter") ? parameters.get(args[0]) : null);
+  }
+
+  /** Returns a response that only counts the bytes of its body. */
+  private HttpServletResponse response() {
+    ServletOutputStream body = new ServletOutputStream() {
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener listener) {}
+
+      @Override
+      public void write(int b) {
+        bytesWritten++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        bytesWritten += len;
+      }
+    };
+    return (HttpServletResponse) Proxy.newProxyInstance(
+        HttpServletResponse.class.getClassLoader(),
+        new Class<?>[] {HttpServletResponse.class},
+        (proxy, method, args) -> method.getName().equals("getOutputStream") ? body : null);
+  }
+}
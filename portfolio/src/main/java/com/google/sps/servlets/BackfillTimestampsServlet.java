@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.annotation.WebServlet;
+
+/**
+ * Migration task that gives comments written before the {@code timestamp} property existed a
+ * timestamp parsed from their {@code date} string, so that they show up in sorted and windowed
+ * queries.
+ */
+@WebServlet(BackfillTimestampsServlet.URL)
+public class BackfillTimestampsServlet extends BatchTaskServlet {
+  static final String URL = "/tasks/backfill-timestamps";
+  static final String JOB_TYPE = "backfill-timestamps";
+
+  /** Largest number of entities Datastore accepts in a single put call. */
+  private static final int BATCH_SIZE = 500;
+
+  @Override
+  protected Query query() {
+    // Datastore cannot query for a missing property, so the whole kind is scanned.
+    return new Query("Comment");
+  }
+
+  @Override
+  protected int batchSize() {
+    return BATCH_SIZE;
+  }
+
+  @Override
+  protected int process(QueryResultList<Entity> batch) {
+    List<Entity> updated = new ArrayList<>();
+    for (Entity entity : batch) {
+      if (entity.hasProperty("timestamp")) {
+        continue;
+      }
+      Optional<Long> timestamp = Comment.timestampOf(entity);
+      if (timestamp.isPresent()) {
+        entity.setProperty("timestamp", timestamp.get());
+        updated.add(entity);
+      }
+    }
+    if (updated.isEmpty()) {
+      return 0;
+    }
+
+    datastore.put(updated);
+    DataServlet.CACHE.invalidate();
+    return updated.size();
+  }
+}
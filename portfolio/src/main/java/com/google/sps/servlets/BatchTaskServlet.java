@@ -0,0 +1,79 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.io.IOException;
+import java.util.Optional;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Task queue handler that runs one batch of a {@link JobStore} job: it reads the next
+ * {@code batchSize()} entities of {@code query()} after the job's cursor, hands them to
+ * {@code process}, and records the batch, which chains the next one.
+ */
+abstract class BatchTaskServlet extends HttpServlet {
+
+  protected final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  protected final JobStore jobs = new JobStore();
+
+  /** Query the job works through. */
+  protected abstract Query query();
+
+  /** Number of entities handled by one task. */
+  protected abstract int batchSize();
+
+  /** Handles one batch and returns how many entities it changed. */
+  protected abstract int process(QueryResultList<Entity> batch);
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine strips this header from external requests, so only the task queue can get past.
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    long jobId = Long.parseLong(request.getParameter("job"));
+    long batch = Long.parseLong(request.getParameter("batch"));
+    Optional<Entity> job = jobs.get(jobId);
+    // Skip unknown or finished jobs, and batches that an earlier delivery of this task already
+    // recorded.
+    if (!job.isPresent()
+        || !JobStatus.RUNNING.equals(job.get().getProperty("state"))
+        || (Long) job.get().getProperty("batches") != batch) {
+      return;
+    }
+
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(batchSize());
+    String cursor = (String) job.get().getProperty("cursor");
+    if (cursor != null) {
+      fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+    }
+    QueryResultList<Entity> results = datastore.prepare(query()).asQueryResultList(fetchOptions);
+
+    int processed = results.isEmpty() ? 0 : process(results);
+    boolean done = results.size() < batchSize();
+    jobs.recordBatch(jobId, batch, processed, results.getCursor(), done);
+  }
+}
@@ -14,28 +14,214 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.auto.value.AutoValue;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 /** Encapsulate Datastore entity as comment. */
 @AutoValue
 abstract class Comment {
+  /** Format of {@code Date.toString()}, which older comments used to store their date. */
+  private static final DateTimeFormatter LEGACY_DATE_FORMAT =
+      DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+
+  /**
+   * Names of the stored properties of a comment, in the order they are serialized. The nickname
+   * is not stored with the comment, so it is serialized last and cannot be asked for alone.
+   */
+  static final List<String> PROPERTIES = Collections.unmodifiableList(
+      Arrays.asList("firstName", "lastName", "commentText", "date", "timestamp", "id", "path"));
+
+  /**
+   * Most replies deep a comment can be. Each level adds a 50 character segment to the path, which
+   * has to stay under the 1500 byte limit of indexed strings.
+   */
+  static final int MAX_DEPTH = 16;
+
+  /** Digits of the timestamp in a path segment, enough for every time until the year 2286. */
+  private static final int TIMESTAMP_DIGITS = 13;
+
   abstract String firstName();
   abstract String lastName();
   abstract String commentText();
   abstract String date();
+  abstract long timestamp();
   abstract String id();
 
+  /**
+   * Returns the materialized path of the comment: the {@linkplain #pathSegment segments} of its
+   * ancestors and then its own, joined by {@code /}. Sorting by path lists a thread depth first
+   * with the replies to each comment in the order they were made, and the replies below a comment
+   * are exactly the paths that start with its path and a {@code /}.
+   */
+  abstract String path();
+
+  /**
+   * Returns the current nickname of the account the comment was posted from, looked up when the
+   * comment is read, or "" if it was posted logged out or the user has not set one.
+   */
+  abstract String nickname();
+
+  /** Returns the Datastore key of the comment with the given UUID. */
+  static Key key(String id) {
+    return KeyFactory.createKey("Comment", id);
+  }
+
+  /** Reads a comment from its Datastore entity. */
+  static Comment fromEntity(Entity entity) {
+    return builder()
+        .setfirstName((String) entity.getProperty("firstName"))
+        .setLastName((String) entity.getProperty("lastName"))
+        .setCommentText((String) entity.getProperty("commentText"))
+        .setDate((String) entity.getProperty("date"))
+        .setTimestamp(timestampOf(entity).orElse(0L))
+        .setId((String) entity.getProperty("id"))
+        .setPath(pathOf(entity))
+        .build();
+  }
+
+  /** Returns the Datastore entity of the comment, keyed by its UUID. */
+  Entity toEntity() {
+    Entity entity = new Entity(key(id()));
+    entity.setProperty("firstName", firstName());
+    entity.setProperty("lastName", lastName());
+    entity.setProperty("commentText", commentText());
+    entity.setProperty("date", date());
+    entity.setProperty("timestamp", timestamp());
+    entity.setProperty("id", id());
+    entity.setProperty("path", path());
+    // Stored so that queries can tell top-level comments from replies without reading the path.
+    entity.setProperty("depth", (long) depth());
+    return entity;
+  }
+
+  /** Returns a copy of the comment shown with the given nickname. */
+  Comment withNickname(String nickname) {
+    return toBuilder().setNickname(nickname).build();
+  }
+
+  /** Returns the name the comment was signed with, which is what comments are counted by. */
+  String author() {
+    return (firstName() + " " + lastName()).trim();
+  }
+
+  /** Returns the given properties of the comment by name, in the order of {@link #PROPERTIES}. */
+  Map<String, Object> properties(Set<String> names) {
+    Map<String, Object> properties = new LinkedHashMap<>();
+    properties.put("firstName", firstName());
+    properties.put("lastName", lastName());
+    properties.put("commentText", commentText());
+    properties.put("date", date());
+    properties.put("timestamp", timestamp());
+    properties.put("id", id());
+    properties.put("path", path());
+    properties.keySet().retainAll(names);
+    return properties;
+  }
+
+  /** Returns the id of the comment this one replies to, if it is a reply. */
+  Optional<String> parentId() {
+    int end = path().lastIndexOf('/');
+    if (end < 0) {
+      return Optional.empty();
+    }
+    String parentSegment = path().substring(path().lastIndexOf('/', end - 1) + 1, end);
+    return Optional.of(parentSegment.substring(TIMESTAMP_DIGITS));
+  }
+
+  /** Returns the number of comments this one is below in its thread, 0 for a top-level comment. */
+  int depth() {
+    return depth(path());
+  }
+
+  /** Returns the depth of the comment with the given materialized path. */
+  static int depth(String path) {
+    int depth = 0;
+    for (int i = 0; i < path.length(); i++) {
+      if (path.charAt(i) == '/') {
+        depth++;
+      }
+    }
+    return depth;
+  }
+
+  /** Returns the path of a reply to this comment, made at {@code timestamp}. */
+  String replyPath(long timestamp, String id) {
+    return path() + "/" + pathSegment(timestamp, id);
+  }
+
+  /**
+   * Returns the part of the path that stands for one comment: its timestamp padded to
+   * {@code TIMESTAMP_DIGITS} digits, then its UUID. Every segment has the same length, so
+   * siblings sort by time and no path falls between a comment and its replies.
+   */
+  static String pathSegment(long timestamp, String id) {
+    return String.format("%0" + TIMESTAMP_DIGITS + "d%s", timestamp, id);
+  }
+
+  /** Returns the stored path, or a top-level path for comments made before replies existed. */
+  private static String pathOf(Entity entity) {
+    String path = (String) entity.getProperty("path");
+    if (path != null) {
+      return path;
+    }
+    return pathSegment(timestampOf(entity).orElse(0L), (String) entity.getProperty("id"));
+  }
+
+  /**
+   * Returns when the comment was made in milliseconds since the epoch. Comments that predate the
+   * {@code timestamp} property only have their {@code date} string, which is parsed instead.
+   */
+  static Optional<Long> timestampOf(Entity entity) {
+    Long timestamp = (Long) entity.getProperty("timestamp");
+    if (timestamp != null) {
+      return Optional.of(timestamp);
+    }
+    String date = (String) entity.getProperty("date");
+    if (date == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ZonedDateTime.parse(date, LEGACY_DATE_FORMAT).toInstant().toEpochMilli());
+    } catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+
+  static TypeAdapter<Comment> typeAdapter(Gson gson) {
+    return new AutoValue_Comment.GsonTypeAdapter(gson);
+  }
+
   static Builder builder() {
-    return new AutoValue_Comment.Builder();
+    return new AutoValue_Comment.Builder().setNickname("");
   }
 
+  abstract Builder toBuilder();
+
   @AutoValue.Builder
   abstract static class Builder {
     abstract Builder setfirstName(String value);
     abstract Builder setLastName(String value);
     abstract Builder setCommentText(String value);
     abstract Builder setDate(String value);
+    abstract Builder setTimestamp(long value);
     abstract Builder setId(String value);
+    abstract Builder setPath(String value);
+    abstract Builder setNickname(String value);
     abstract Comment build();
   }
 }
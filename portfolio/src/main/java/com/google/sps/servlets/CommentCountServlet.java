@@ -0,0 +1,48 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import java.io.IOException;
+import java.util.Optional;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns the number of comments, or with {@code author} the number signed with
+ * that name, without reading the comments themselves.
+ */
+@WebServlet("/data/count")
+public class CommentCountServlet extends HttpServlet {
+
+  /** Counters the Datastore repository keeps, shared with {@link StatsServlet} for reporting. */
+  static final ShardedCounter COUNTERS = new ShardedCounter(
+      DatastoreServiceFactory.getDatastoreService(),
+      Integer.getInteger("comments.counter.shards", 20),
+      Integer.getInteger("comments.counter.cacheCapacity", 256),
+      Long.getLong("comments.counter.maxAgeMillis", 5_000L));
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> author =
+        Optional.ofNullable(request.getParameter("author")).filter(name -> !name.isEmpty());
+    long count = DataServlet.REPOSITORY.count(author);
+
+    response.setContentType("application/json;charset=UTF-8");
+    response.getWriter().println(Json.toJson(Json.COMMENT_COUNT, CommentCount.create(count)));
+  }
+}
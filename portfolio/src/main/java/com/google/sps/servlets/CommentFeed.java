@@ -0,0 +1,147 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Fans new comments out to the open Server-Sent Events connections of this instance.
+ *
+ * <p>Connections are held by {@code AsyncContext}s rather than threads. Each subscriber has a
+ * bounded queue of pending events that is drained with non-blocking writes whenever its socket can
+ * take more. A subscriber whose queue fills up is too slow to keep up and is disconnected; its
+ * browser reconnects and reloads the comments it missed.
+ */
+final class CommentFeed {
+
+  /** An open event stream. */
+  final class Subscriber implements WriteListener {
+    private final AsyncContext context;
+    private final ServletOutputStream out;
+    private final Queue<byte[]> pending;
+    private boolean closed;
+
+    Subscriber(AsyncContext context, ServletOutputStream out) {
+      this.context = context;
+      this.out = out;
+      this.pending = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    /** Queues an event, disconnecting the subscriber if its queue is full. */
+    void send(byte[] event) {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        if (!pending.offer(event)) {
+          evicted.incrementAndGet();
+          close();
+          return;
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void onWritePossible() {
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      close();
+    }
+
+    /** Writes queued events for as long as the socket accepts them without blocking. */
+    private synchronized void drain() {
+      try {
+        while (!closed && out.isReady()) {
+          byte[] event = pending.poll();
+          if (event == null) {
+            out.flush();
+            return;
+          }
+          out.write(event);
+        }
+      } catch (IOException e) {
+        close();
+      }
+    }
+
+    /** Ends the stream. Safe to call more than once. */
+    synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      pending.clear();
+      subscribers.remove(this);
+      context.complete();
+    }
+  }
+
+  private final int bufferSize;
+  private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+
+  /** @param bufferSize most events that can wait for a subscriber before it is disconnected */
+  CommentFeed(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  /** Starts streaming to {@code context}, whose response must not have been written yet. */
+  Subscriber subscribe(AsyncContext context) throws IOException {
+    ServletOutputStream out = context.getResponse().getOutputStream();
+    Subscriber subscriber = new Subscriber(context, out);
+    subscribers.add(subscriber);
+    // The container calls onWritePossible once the stream is ready, which sends any backlog.
+    out.setWriteListener(subscriber);
+    return subscriber;
+  }
+
+  /** Sends {@code comment} to every subscriber. The event is serialized once for all of them. */
+  void publish(Comment comment) {
+    published.incrementAndGet();
+    if (subscribers.isEmpty()) {
+      return;
+    }
+    byte[] event = ("event: comment\ndata: " + Json.toJson(Json.COMMENT, comment) + "\n\n")
+        .getBytes(StandardCharsets.UTF_8);
+    for (Subscriber subscriber : subscribers) {
+      subscriber.send(event);
+    }
+  }
+
+  /** Returns the number of open streams, published comments and evicted slow subscribers. */
+  Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("subscribers", (long) subscribers.size());
+    stats.put("published", published.get());
+    stats.put("evicted", evicted.get());
+    return stats;
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that streams new comments to the browser as Server-Sent Events.
+ *
+ * <p>Streaming needs the App Engine flexible environment. The java8 standard environment buffers
+ * the whole response until the request ends, so no event would reach the browser before the stream
+ * times out. The headers are flushed as soon as the stream starts, which is what opens the
+ * {@code EventSource}; script.js falls back to polling {@code /data} when it does not open.
+ */
+@WebServlet(urlPatterns = "/comments/live", asyncSupported = true)
+public class CommentFeedServlet extends HttpServlet {
+
+  /** Feed of this instance, published to by {@link DataServlet}. */
+  static final CommentFeed FEED =
+      new CommentFeed(Integer.getInteger("comments.feed.bufferSize", 32));
+
+  /** Streams are closed after this long; {@code EventSource} reconnects on its own. */
+  private static final long STREAM_TIMEOUT_MILLIS =
+      Long.getLong("comments.feed.timeoutMillis", 300_000L);
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("text/event-stream;charset=UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+
+    AsyncContext context = request.startAsync();
+    context.setTimeout(STREAM_TIMEOUT_MILLIS);
+    CommentFeed.Subscriber subscriber = FEED.subscribe(context);
+    context.addListener(new AsyncListener() {
+      @Override
+      public void onComplete(AsyncEvent event) {
+        subscriber.close();
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        subscriber.close();
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        subscriber.close();
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {}
+    });
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded, least recently used cache of serialized comment responses keyed by query shape.
+ *
+ * <p>Every write to the comments bumps the cache version. A response is only stored if no write
+ * happened while it was being built, so readers never get a page from before their own write.
+ * Entries also expire after {@code maxAgeMillis}, which bounds how long writes made on another
+ * instance can go unnoticed.
+ */
+final class CommentPageCache {
+
+  /** A cached response body, compressed the first time it is sent to a client that accepts it. */
+  static final class Body {
+    private final byte[] bytes;
+    private volatile byte[] gzipped;
+
+    Body(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    byte[] bytes() {
+      return bytes;
+    }
+
+    /** Returns the body in gzip format. Racing callers may both compress it, which is harmless. */
+    byte[] gzipped() {
+      if (gzipped == null) {
+        gzipped = GzipFilter.gzip(bytes);
+      }
+      return gzipped;
+    }
+  }
+
+  private static final class Entry {
+    final Body body;
+    final long createdMillis;
+
+    Entry(Body body, long createdMillis) {
+      this.body = body;
+      this.createdMillis = createdMillis;
+    }
+  }
+
+  private final long maxAgeMillis;
+  private final Map<String, Entry> entries;
+  private long version;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  CommentPageCache(int capacity, long maxAgeMillis) {
+    this.maxAgeMillis = maxAgeMillis;
+    this.entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, /* accessOrder= */ true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /** Returns the current version, to be handed back to {@code put} once the response is built. */
+  synchronized long version() {
+    return version;
+  }
+
+  /** Returns the cached body for {@code key} if it is still fresh. */
+  synchronized Optional<Body> get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && System.currentTimeMillis() - entry.createdMillis > maxAgeMillis) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    return Optional.of(entry.body);
+  }
+
+  /**
+   * Stores {@code body} under {@code key}, unless the comments changed since {@code version} was
+   * read.
+   */
+  synchronized void put(String key, long version, byte[] body) {
+    if (version == this.version) {
+      entries.put(key, new Entry(new Body(body), System.currentTimeMillis()));
+    }
+  }
+
+  /** Drops every cached response. Must be called after each write to the comments. */
+  synchronized void invalidate() {
+    version++;
+    entries.clear();
+  }
+
+  /** Returns hit, miss and eviction counts along with the current size. */
+  synchronized Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    stats.put("evictions", evictions);
+    stats.put("size", (long) entries.size());
+    return stats;
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/** Storage of comments, so the servlets do not depend on a particular backend. */
+interface CommentRepository {
+
+  /** Comments of one page, read as they are iterated. */
+  interface Results<T> extends Iterator<T> {
+    /** Returns an opaque cursor that continues after the last comment returned so far. */
+    String cursor();
+  }
+
+  /**
+   * Returns up to {@code limit} top-level comments, newest first. Replies are only read with
+   * their {@linkplain #thread thread}.
+   *
+   * @param since if present, only comments made at or after this time in epoch milliseconds
+   * @param until if present, only comments made before this time in epoch milliseconds
+   * @param cursor if present, continue after the comment this cursor was taken at
+   * @throws IllegalArgumentException if the cursor was not produced by this repository
+   */
+  Results<Comment> list(
+      Optional<Long> since, Optional<Long> until, int limit, Optional<String> cursor);
+
+  /**
+   * Like {@link #list(Optional, Optional, int, Optional)}, but only returns the given properties of
+   * each comment, by name in the order of {@link Comment#PROPERTIES}. This implementation reads
+   * whole comments; backends that can read less override it. Cursors of the two methods are not
+   * interchangeable.
+   */
+  default Results<Map<String, Object>> list(Optional<Long> since, Optional<Long> until, int limit,
+      Optional<String> cursor, Set<String> fields) {
+    Results<Comment> comments = list(since, until, limit, cursor);
+    return new Results<Map<String, Object>>() {
+      @Override
+      public boolean hasNext() {
+        return comments.hasNext();
+      }
+
+      @Override
+      public Map<String, Object> next() {
+        return comments.next().properties(fields);
+      }
+
+      @Override
+      public String cursor() {
+        return comments.cursor();
+      }
+    };
+  }
+
+  /**
+   * Returns the comment with the given id followed by the replies below it, at most {@code depth}
+   * levels down, sorted by {@linkplain Comment#path path}. At most {@code limit} comments are
+   * returned; a thread cut short still holds every ancestor of every comment in it.
+   *
+   * @return the comments, or empty if the comment with the given id does not exist
+   */
+  Optional<List<Comment>> thread(String id, int depth, int limit);
+
+  /** Returns the comment with the given id, if it exists. */
+  Optional<Comment> get(String id);
+
+  /**
+   * Stores a comment, replacing any comment with the same id.
+   *
+   * @param userId if present, the account the comment was posted from, whose nickname is shown
+   *     with the comment when it is read back
+   */
+  void save(Comment comment, Optional<String> userId);
+
+  /** Deletes the comment with the given id and returns whether it existed. */
+  boolean delete(String id);
+
+  /**
+   * Deletes every comment.
+   *
+   * @return the background job doing the work, or empty if every comment is already deleted
+   */
+  Optional<JobStatus> deleteAll();
+
+  /**
+   * Returns the number of comments, or the number signed with {@code author} if it is present.
+   * The count may lag behind writes made on other instances for a few seconds.
+   */
+  long count(Optional<String> author);
+
+  /**
+   * Reads comments that were found somewhere other than this repository, such as the search index,
+   * again as they are stored now, with the current nicknames of the accounts they were posted
+   * from. Comments that are not stored, because they were deleted or are still in the write-behind
+   * buffer, are left out. This implementation gets each comment by its id.
+   */
+  default List<Comment> current(List<Comment> comments) {
+    List<Comment> current = new ArrayList<>(comments.size());
+    for (Comment comment : comments) {
+      get(comment.id()).ifPresent(current::add);
+    }
+    return current;
+  }
+
+  /**
+   * Returns up to {@code limit} comments of any depth, in an order of the backend's choosing, so
+   * that in-memory indexes can be rebuilt a page at a time.
+   *
+   * @param cursor if present, continue after the comment this cursor was taken at
+   * @throws IllegalArgumentException if the cursor was not produced by this method
+   */
+  Results<Comment> all(int limit, Optional<String> cursor);
+
+  /**
+   * Returns the backend named by the {@code comments.repository} system property: Datastore by
+   * default, or the memory-mapped log at {@code comments.repository.path} for {@code mapped}.
+   */
+  static CommentRepository fromSystemProperties(Optional<CommentWriteBuffer> writeBuffer) {
+    if ("mapped".equals(System.getProperty("comments.repository"))) {
+      try {
+        return new MappedLogCommentRepository(
+            Paths.get(System.getProperty("comments.repository.path", "comments.log")));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return new DatastoreCommentRepository(DatastoreServiceFactory.getDatastoreService(),
+        writeBuffer, new JobStore(), CommentCountServlet.COUNTERS, LoginServlet.USERS);
+  }
+}
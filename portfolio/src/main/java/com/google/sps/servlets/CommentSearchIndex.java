@@ -0,0 +1,259 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the names and text of comments. Each token maps to a posting list
+ * of the comments that contain it and how often, so a query only touches the postings of its own
+ * tokens. Results are ranked by TF-IDF and the top {@code limit} are kept in a bounded heap.
+ *
+ * <p>The index only sees writes made through this instance. When the instance starts it is rebuilt
+ * from the repository a page at a time by {@link #rebuild}, and it is not {@linkplain #isReady
+ * ready} to be searched until every page has been read.
+ */
+final class CommentSearchIndex {
+
+  private static final class ScoredComment {
+    final Comment comment;
+    final double score;
+
+    ScoredComment(Comment comment, double score) {
+      this.comment = comment;
+      this.score = score;
+    }
+  }
+
+  /** Best score first; among equal scores, newest first. */
+  private static final Comparator<ScoredComment> BY_RANK =
+      Comparator.<ScoredComment>comparingDouble(scored -> scored.score)
+          .thenComparingLong(scored -> scored.comment.timestamp())
+          .reversed();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<String, Comment> comments = new HashMap<>();
+  private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+
+  /** Held by the one caller reading pages into the index at a time. */
+  private final Lock rebuildLock = new ReentrantLock();
+  private volatile boolean ready;
+  private Optional<String> rebuildCursor = Optional.empty();
+  /** Comments removed during the rebuild, which pages read before the removal must not add back. */
+  private final Set<String> removedDuringRebuild = new HashSet<>();
+
+  /** Adds a comment, replacing any earlier version with the same id. */
+  void add(Comment comment) {
+    lock.writeLock().lock();
+    try {
+      addLocked(comment);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Removes the comment with the given id, if it is indexed. */
+  void remove(String id) {
+    lock.writeLock().lock();
+    try {
+      removeLocked(id);
+      if (!ready) {
+        removedDuringRebuild.add(id);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Drops every comment from the index, which ends any rebuild: nothing is left to read. */
+  void clear() {
+    lock.writeLock().lock();
+    try {
+      comments.clear();
+      postings.clear();
+      ready = true;
+      rebuildCursor = Optional.empty();
+      removedDuringRebuild.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns whether every stored comment has been read into the index. */
+  boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Reads pages of {@code pageSize} comments from the repository into the index until every
+   * comment has been read or {@code budgetMillis} have passed. Each call continues where the last
+   * one stopped. A caller that finds another one rebuilding returns at once. Comments added since
+   * the rebuild started are newer than their stored version, so they are kept.
+   *
+   * @return whether the index is ready
+   */
+  boolean rebuild(CommentRepository repository, int pageSize, long budgetMillis) {
+    if (ready || !rebuildLock.tryLock()) {
+      return ready;
+    }
+    try {
+      long start = System.nanoTime();
+      while (!ready && System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(budgetMillis)) {
+        CommentRepository.Results<Comment> page = repository.all(pageSize, rebuildCursor);
+        List<Comment> read = new ArrayList<>(pageSize);
+        page.forEachRemaining(read::add);
+
+        lock.writeLock().lock();
+        try {
+          if (ready) {
+            break;
+          }
+          for (Comment comment : read) {
+            if (!comments.containsKey(comment.id())
+                && !removedDuringRebuild.contains(comment.id())) {
+              addLocked(comment);
+            }
+          }
+          rebuildCursor = Optional.of(page.cursor());
+          if (read.size() < pageSize) {
+            ready = true;
+            removedDuringRebuild.clear();
+          }
+        } finally {
+          lock.writeLock().unlock();
+        }
+      }
+      return ready;
+    } finally {
+      rebuildLock.unlock();
+    }
+  }
+
+  /** Returns the {@code limit} comments that best match {@code query}, best match first. */
+  List<Comment> search(String query, int limit) {
+    Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+    lock.readLock().lock();
+    try {
+      Map<String, Double> scores = new HashMap<>();
+      for (String token : tokens) {
+        Map<String, Integer> posting = postings.get(token);
+        if (posting == null) {
+          continue;
+        }
+        double idf = Math.log(1 + (double) comments.size() / posting.size());
+        for (Map.Entry<String, Integer> match : posting.entrySet()) {
+          scores.merge(match.getKey(), match.getValue() * idf, Double::sum);
+        }
+      }
+
+      // Min-heap of the best matches so far, so ranking costs O(matches * log(limit)).
+      PriorityQueue<ScoredComment> best = new PriorityQueue<>(limit + 1, BY_RANK.reversed());
+      for (Map.Entry<String, Double> score : scores.entrySet()) {
+        best.add(new ScoredComment(comments.get(score.getKey()), score.getValue()));
+        if (best.size() > limit) {
+          best.poll();
+        }
+      }
+      List<ScoredComment> ranked = new ArrayList<>(best);
+      ranked.sort(BY_RANK);
+      List<Comment> results = new ArrayList<>(ranked.size());
+      for (ScoredComment scored : ranked) {
+        results.add(scored.comment);
+      }
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the number of indexed comments and distinct tokens. */
+  Map<String, Long> stats() {
+    lock.readLock().lock();
+    try {
+      Map<String, Long> stats = new LinkedHashMap<>();
+      stats.put("comments", (long) comments.size());
+      stats.put("tokens", (long) postings.size());
+      stats.put("ready", ready ? 1L : 0L);
+      return stats;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void addLocked(Comment comment) {
+    removeLocked(comment.id());
+    comments.put(comment.id(), comment);
+    for (Map.Entry<String, Integer> term : termFrequencies(comment).entrySet()) {
+      postings.computeIfAbsent(term.getKey(), token -> new HashMap<>())
+          .put(comment.id(), term.getValue());
+    }
+  }
+
+  private void removeLocked(String id) {
+    Comment old = comments.remove(id);
+    if (old == null) {
+      return;
+    }
+    for (String token : termFrequencies(old).keySet()) {
+      Map<String, Integer> posting = postings.get(token);
+      posting.remove(id);
+      if (posting.isEmpty()) {
+        postings.remove(token);
+      }
+    }
+  }
+
+  private static Map<String, Integer> termFrequencies(Comment comment) {
+    Map<String, Integer> frequencies = new HashMap<>();
+    String[] fields = {comment.firstName(), comment.lastName(), comment.commentText()};
+    for (String text : fields) {
+      for (String token : tokenize(text)) {
+        frequencies.merge(token, 1, Integer::sum);
+      }
+    }
+    return frequencies;
+  }
+
+  /** Splits text into lower case runs of letters and digits. */
+  static List<String> tokenize(String text) {
+    if (text == null) {
+      return Collections.emptyList();
+    }
+    List<String> tokens = new ArrayList<>();
+    for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!token.isEmpty()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that returns the comments best matching the words in {@code q}. */
+@WebServlet("/comments/search")
+public class CommentSearchServlet extends HttpServlet {
+
+  /** Index of this instance, kept up to date by {@link DataServlet}. */
+  static final CommentSearchIndex INDEX = new CommentSearchIndex();
+
+  private static final int DEFAULT_LIMIT = 10;
+  private static final int MAX_LIMIT = 100;
+
+  /** Comments read from the repository per page while the index is rebuilt. */
+  private static final int REBUILD_PAGE_SIZE = 500;
+
+  /** Longest a search spends rebuilding the index before it answers 503 instead. */
+  private static final long REBUILD_BUDGET_MILLIS = 2_000;
+
+  /** Reads every remaining page of the repository into the index. */
+  static void rebuildIndex() {
+    INDEX.rebuild(DataServlet.REPOSITORY, REBUILD_PAGE_SIZE, Long.MAX_VALUE);
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String query = request.getParameter("q");
+    if (query == null || query.trim().isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing query.");
+      return;
+    }
+
+    int limit;
+    try {
+      limit = Math.max(1, Math.min(Integer.parseInt(request.getParameter("limit")), MAX_LIMIT));
+    } catch (NumberFormatException e) {
+      limit = DEFAULT_LIMIT;
+    }
+    // Until the index has read every comment its results would silently miss some, so searches
+    // help the rebuild along and are refused while it is incomplete.
+    if (!INDEX.rebuild(DataServlet.REPOSITORY, REBUILD_PAGE_SIZE, REBUILD_BUDGET_MILLIS)) {
+      response.setHeader("Retry-After", "1");
+      response.sendError(
+          HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The search index is still being built.");
+      return;
+    }
+    // The index only sees the writes and deletes of this instance and keeps comments as they were
+    // posted, so hits are read again from the repository. That leaves out comments deleted on
+    // other instances, which can make a page shorter than the limit.
+    List<Comment> results = DataServlet.REPOSITORY.current(INDEX.search(query, limit));
+
+    String json = Json.toJson(Json.COMMENTS, results);
+    response.setContentType("application/json;charset=UTF-8");
+    response.getWriter().println(json);
+  }
+}
@@ -0,0 +1,208 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind buffer for new comments. Accepted entities wait in a bounded queue and are written
+ * with one multi-entity put per batch, once {@code batchSize} of them are queued, once the oldest
+ * has waited {@code maxDelayMillis}, or when the instance shuts down.
+ *
+ * <p>When the queue is full {@code offer} refuses the entity and the caller writes it itself, so
+ * a burst slows down the requests that overflow it instead of growing memory or dropping writes.
+ * Comments are not visible to readers until their batch is flushed.
+ *
+ * <p>A batch whose put still fails after a few attempts is handed to {@code onFailure} instead of
+ * being dropped, since its comments were already acknowledged.
+ */
+final class CommentWriteBuffer {
+  private static final Logger logger = Logger.getLogger(CommentWriteBuffer.class.getName());
+
+  /** Times a batch is put before it is handed off. */
+  private static final int PUT_ATTEMPTS = 3;
+
+  /** Wait before the second put of a batch; later attempts wait proportionally longer. */
+  private static final long RETRY_BACKOFF_MILLIS = 50;
+
+  private final DatastoreService datastore;
+  private final BlockingQueue<Entity> queue;
+  private final int batchSize;
+  private final long maxDelayNanos;
+  private final Consumer<List<Entity>> onFlush;
+  private final Consumer<List<Entity>> onFailure;
+  private final Object flushLock = new Object();
+
+  /** When the oldest entity still in the queue was accepted, or 0 if the queue is empty. */
+  private final AtomicLong oldestQueuedNanos = new AtomicLong();
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong refused = new AtomicLong();
+  private final AtomicLong flushes = new AtomicLong();
+  private final AtomicLong flushedEntities = new AtomicLong();
+  private final AtomicLong handedOffEntities = new AtomicLong();
+  private final AtomicLong failedEntities = new AtomicLong();
+  private final AtomicLong totalFlushNanos = new AtomicLong();
+  private final AtomicLong maxFlushNanos = new AtomicLong();
+
+  /**
+   * @param capacity most entities that can wait in the queue
+   * @param batchSize most entities written by one put call
+   * @param maxDelayMillis longest an accepted entity should wait before it is written
+   * @param onFlush called with the entities each flush wrote, if it wrote any
+   * @param onFailure takes over batches that could still not be written after retries
+   */
+  CommentWriteBuffer(
+      DatastoreService datastore, int capacity, int batchSize, long maxDelayMillis,
+      Consumer<List<Entity>> onFlush, Consumer<List<Entity>> onFailure) {
+    this.datastore = datastore;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    this.onFlush = onFlush;
+    this.onFailure = onFailure;
+  }
+
+  /**
+   * Queues {@code entity} to be written later.
+   *
+   * @return false if the queue is full, in which case the caller must write the entity itself
+   */
+  boolean offer(Entity entity) {
+    if (!queue.offer(entity)) {
+      refused.incrementAndGet();
+      return false;
+    }
+    accepted.incrementAndGet();
+    oldestQueuedNanos.compareAndSet(0, System.nanoTime());
+
+    if (queue.size() >= batchSize || isOverdue()) {
+      flush();
+    }
+    return true;
+  }
+
+  /** Flushes the queue if its oldest entity has waited longer than the maximum delay. */
+  void flushIfOverdue() {
+    if (isOverdue()) {
+      flush();
+    }
+  }
+
+  /** Writes every queued entity, one put call per batch. */
+  void flush() {
+    List<Entity> written = new ArrayList<>();
+    synchronized (flushLock) {
+      List<Entity> batch = new ArrayList<>(batchSize);
+      oldestQueuedNanos.set(0);
+      while (queue.drainTo(batch, batchSize) > 0) {
+        long start = System.nanoTime();
+        if (put(batch)) {
+          written.addAll(batch);
+          flushedEntities.addAndGet(batch.size());
+        } else {
+          handOff(batch);
+        }
+        recordFlush(System.nanoTime() - start);
+        batch.clear();
+      }
+      // Entities offered while the queue was drained restart the clock.
+      if (!queue.isEmpty()) {
+        oldestQueuedNanos.compareAndSet(0, System.nanoTime());
+      }
+    }
+    if (!written.isEmpty()) {
+      onFlush.accept(written);
+    }
+  }
+
+  /** Returns the queue depth, flush counts and flush latency in milliseconds. */
+  Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    long flushCount = flushes.get();
+    stats.put("queueDepth", (long) queue.size());
+    stats.put("accepted", accepted.get());
+    stats.put("refused", refused.get());
+    stats.put("flushes", flushCount);
+    stats.put("flushedEntities", flushedEntities.get());
+    stats.put("handedOffEntities", handedOffEntities.get());
+    stats.put("failedEntities", failedEntities.get());
+    stats.put("meanFlushMillis",
+        flushCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalFlushNanos.get() / flushCount));
+    stats.put("maxFlushMillis", TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get()));
+    return stats;
+  }
+
+  /**
+   * Writes the batch, trying again after a short backoff if the put fails. The callers of these
+   * comments already got a response, so a failure cannot be reported to them.
+   *
+   * @return whether the batch was written
+   */
+  private boolean put(List<Entity> batch) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        datastore.put(batch);
+        return true;
+      } catch (RuntimeException e) {
+        if (attempt == PUT_ATTEMPTS) {
+          logger.log(Level.WARNING, "Could not write " + batch.size() + " buffered comments", e);
+          return false;
+        }
+      }
+      try {
+        Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  /** Passes a batch that could not be written to {@code onFailure}, which stores it durably. */
+  private void handOff(List<Entity> batch) {
+    try {
+      onFailure.accept(batch);
+      handedOffEntities.addAndGet(batch.size());
+    } catch (RuntimeException e) {
+      // Nowhere is left to keep the comments, so the log holds everything needed to restore them.
+      failedEntities.addAndGet(batch.size());
+      logger.log(Level.SEVERE, "Lost " + batch.size() + " buffered comments: " + batch, e);
+    }
+  }
+
+  private boolean isOverdue() {
+    long oldest = oldestQueuedNanos.get();
+    return oldest != 0 && System.nanoTime() - oldest >= maxDelayNanos;
+  }
+
+  private void recordFlush(long nanos) {
+    flushes.incrementAndGet();
+    totalFlushNanos.addAndGet(nanos);
+    maxFlushNanos.accumulateAndGet(nanos, Math::max);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.Optional;
+import javax.servlet.annotation.WebServlet;
+
+/**
+ * Migration task that adds comments written before they were counted to the comment counters.
+ * Every comment is marked as counted in the same transaction that counts it, so batches that run
+ * twice do not count anything twice.
+ */
+@WebServlet(CountCommentsServlet.URL)
+public class CountCommentsServlet extends BatchTaskServlet {
+  static final String URL = "/tasks/count-comments";
+  static final String JOB_TYPE = "count-comments";
+
+  /** Each comment is counted in its own transaction, so batches are kept short. */
+  private static final int BATCH_SIZE = 100;
+
+  private final DatastoreCommentRepository repository = new DatastoreCommentRepository(
+      DatastoreServiceFactory.getDatastoreService(), Optional.empty(), jobs,
+      CommentCountServlet.COUNTERS, LoginServlet.USERS);
+
+  @Override
+  protected Query query() {
+    // Datastore cannot query for a missing property, so the whole kind is scanned.
+    return new Query("Comment").setKeysOnly();
+  }
+
+  @Override
+  protected int batchSize() {
+    return BATCH_SIZE;
+  }
+
+  @Override
+  protected int process(QueryResultList<Entity> batch) {
+    int counted = 0;
+    for (Entity entity : batch) {
+      if (repository.addToCounts(entity.getKey())) {
+        counted++;
+      }
+    }
+    return counted;
+  }
+}
@@ -14,20 +14,32 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.gson.Gson;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Date;
-import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -36,58 +48,274 @@ import javax.servlet.http.HttpServletResponse;
 /** Servlet that returns some example content. */
 @WebServlet("/data")
 public class DataServlet extends HttpServlet {
-  
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+  /** Serialized responses of this instance, shared with {@link StatsServlet} for reporting. */
+  static final CommentPageCache CACHE = new CommentPageCache(
+      Integer.getInteger("comments.cache.capacity", 64),
+      Long.getLong("comments.cache.maxAgeMillis", 30_000L));
+
+  /**
+   * Buffer that batches new comments into multi-entity puts. Only present when write-behind mode
+   * is enabled, since buffered comments are not visible until they are flushed.
+   */
+  static final Optional<CommentWriteBuffer> WRITE_BUFFER =
+      Boolean.getBoolean("comments.writeBehind.enabled")
+          ? Optional.of(new CommentWriteBuffer(
+              DatastoreServiceFactory.getDatastoreService(),
+              Integer.getInteger("comments.writeBehind.capacity", 1_000),
+              Integer.getInteger("comments.writeBehind.batchSize", 100),
+              Long.getLong("comments.writeBehind.maxDelayMillis", 1_000L),
+              DataServlet::flushed,
+              WriteCommentServlet::enqueue))
+          : Optional.empty();
+
+  /** Where comments are stored, chosen by the {@code comments.repository} system property. */
+  static final CommentRepository REPOSITORY = CommentRepository.fromSystemProperties(WRITE_BUFFER);
+
+  /** Limits how often each user, or each address when logged out, can post a comment. */
+  static final RateLimiter WRITE_LIMITER = new RateLimiter(
+      Long.getLong("comments.rateLimit.capacity", 10L),
+      Long.getLong("comments.rateLimit.refillMillis", 6_000L),
+      Integer.getInteger("comments.rateLimit.maxKeys", 10_000));
+
+  /** Status sent when a client posts faster than {@link #WRITE_LIMITER} allows. */
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  /** Number of comments returned when the client does not ask for a valid amount. */
+  static final int DEFAULT_PAGE_SIZE = 10;
+
+  /** Upper bound on the comments a single request can fetch, whatever the client asks for. */
+  static final int MAX_PAGE_SIZE = 100;
+
+  /** Most comments of a thread returned at once. */
+  static final int MAX_THREAD_SIZE = 500;
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-    Query query = new Query("Comment");
-    PreparedQuery results = datastore.prepare(query);
+    String id = request.getParameter("id");
+    if (id != null) {
+      Optional<Comment> comment = REPOSITORY.get(id);
+      if (!comment.isPresent()) {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+      response.setContentType("application/json;charset=UTF-8");
+      response.getWriter().println(Json.toJson(Json.COMMENT, comment.get()));
+      return;
+    }
 
-    int maxCommentLimit = getCommentLimitFromParam(request);
+    String thread = request.getParameter("thread");
+    if (thread != null) {
+      writeThread(request, response, thread);
+      return;
+    }
 
-    List<Comment> comments = new ArrayList<>();
-    Iterable<Entity> fetchedComments =
-        results.asIterable(FetchOptions.Builder.withLimit(maxCommentLimit));
+    Optional<Long> since;
+    Optional<Long> until;
+    try {
+      since = getTimeFromParam(request, "since");
+      until = getTimeFromParam(request, "until");
+    } catch (NumberFormatException e) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "since and until must be epoch milliseconds.");
+      return;
+    }
 
-    for (Entity entity : fetchedComments) {
-      String firstName = (String) entity.getProperty("firstName");
-      String lastName = (String) entity.getProperty("lastName");
-      String commentText = (String) entity.getProperty("commentText");
-      String date = (String) entity.getProperty("date");
-      String id = (String) entity.getProperty("id");
+    Optional<Set<String>> fields;
+    try {
+      fields = getFieldsFromParam(request);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
 
-      Comment comment = Comment.builder()
-          .setfirstName(firstName)
-          .setLastName(lastName)
-          .setCommentText(commentText)
-          .setDate(date)
-          .setId(id)
-          .build();
+    boolean paginated =
+        request.getParameter("page-size") != null || request.getParameter("cursor") != null;
+    int maxCommentLimit =
+        getCommentLimitFromParam(request, paginated ? "page-size" : "max-comment");
 
-      comments.add(comment);
+    String cacheKey = (paginated ? "page:" : "list:") + maxCommentLimit + ":"
+        + since.map(String::valueOf).orElse("") + ":" + until.map(String::valueOf).orElse("") + ":"
+        + Optional.ofNullable(request.getParameter("cursor")).orElse("") + ":"
+        + fields.map(names -> String.join(",", names)).orElse("");
+    response.setContentType("application/json;charset=UTF-8");
+    Optional<CommentPageCache.Body> cachedBody = CACHE.get(cacheKey);
+    if (cachedBody.isPresent()) {
+      GzipFilter.writeCached(request, response, cachedBody.get());
+      return;
     }
+    long cacheVersion = CACHE.version();
 
-    Gson gson = new Gson();
-    String json = gson.toJson(comments);
-    response.setContentType("application/json;");
-    response.getWriter().println(json);
+    // Newest comments first.
+    Optional<String> cursor = paginated ? getCursorFromParam(request) : Optional.empty();
+    if (fields.isPresent()) {
+      writePage(response,
+          () -> REPOSITORY.list(since, until, maxCommentLimit, cursor, fields.get()),
+          Json.PROPERTIES, paginated, maxCommentLimit, cacheKey, cacheVersion);
+    } else {
+      writePage(response, () -> REPOSITORY.list(since, until, maxCommentLimit, cursor),
+          Json.COMMENT, paginated, maxCommentLimit, cacheKey, cacheVersion);
+    }
   }
-  
-  private int getCommentLimitFromParam(HttpServletRequest request) {
+
+  /**
+   * Streams the page returned by {@code query} and caches it, or responds with 400 if the query
+   * rejects the client's cursor.
+   */
+  private <T> void writePage(HttpServletResponse response,
+      Supplier<CommentRepository.Results<T>> query, TypeAdapter<T> adapter, boolean paginated,
+      int maxCommentLimit, String cacheKey, long cacheVersion) throws IOException {
+    CommentRepository.Results<T> fetchedComments;
+    try {
+      fetchedComments = query.get();
+    } catch (IllegalArgumentException e) {
+      // Thrown for cursors that cannot be decoded or were not produced by this query.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor.");
+      return;
+    }
+
+    // Each comment is written as soon as the iterator hands it over, so memory use does not grow
+    // with the page size and the first bytes go out while later batches are still being fetched.
+    // A copy of the bytes is kept for the cache; it is bounded by MAX_PAGE_SIZE comments.
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    JsonWriter writer = Json.newJsonWriter(new OutputStreamWriter(
+        new TeeOutputStream(response.getOutputStream(), body), StandardCharsets.UTF_8));
+    if (paginated) {
+      writer.beginObject();
+      writer.name("comments");
+    }
+    writer.beginArray();
+    int written = 0;
+    while (fetchedComments.hasNext()) {
+      adapter.write(writer, fetchedComments.next());
+      written++;
+    }
+    writer.endArray();
+    if (paginated) {
+      // A short page means the query is exhausted, so there is nothing left to continue from.
+      if (written == maxCommentLimit) {
+        writer.name("cursor").value(fetchedComments.cursor());
+      }
+      writer.endObject();
+    }
+    writer.flush();
+    CACHE.put(cacheKey, cacheVersion, body.toByteArray());
+  }
+
+  /**
+   * Writes the comment with the given id as {@code {"comment": ..., "replies": [...]}}, with each
+   * reply nested the same way, down to the depth in the {@code depth} parameter. The thread comes
+   * back depth first, so the nesting is written in one pass: a stack holds the paths of the
+   * comments whose replies are still open, and each comment first closes those it is not below.
+   */
+  private void writeThread(HttpServletRequest request, HttpServletResponse response, String id)
+      throws IOException {
+    int depth;
+    try {
+      depth = Math.max(0, Math.min(Integer.parseInt(request.getParameter("depth")),
+          Comment.MAX_DEPTH));
+    } catch (NumberFormatException e) {
+      depth = Comment.MAX_DEPTH;
+    }
+    Optional<List<Comment>> thread = REPOSITORY.thread(id, depth, MAX_THREAD_SIZE);
+    if (!thread.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setContentType("application/json;charset=UTF-8");
+    JsonWriter writer = Json.newJsonWriter(
+        new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+    Deque<String> open = new ArrayDeque<>();
+    for (Comment comment : thread.get()) {
+      while (!open.isEmpty() && !comment.path().startsWith(open.peek() + "/")) {
+        writer.endArray().endObject();
+        open.pop();
+      }
+      writer.beginObject().name("comment");
+      Json.COMMENT.write(writer, comment);
+      writer.name("replies").beginArray();
+      open.push(comment.path());
+    }
+    while (!open.isEmpty()) {
+      writer.endArray().endObject();
+      open.pop();
+    }
+    writer.flush();
+  }
+
+  /**
+   * Returns the number of comments requested in {@code name}, clamped to
+   * {@code [1, MAX_PAGE_SIZE]}. Missing or malformed values fall back to
+   * {@code DEFAULT_PAGE_SIZE}.
+   */
+  private int getCommentLimitFromParam(HttpServletRequest request, String name) {
     int maxComment;
 
     try {
-      maxComment = Integer.parseInt(request.getParameter("max-comment"));
+      maxComment = Integer.parseInt(request.getParameter(name));
     } catch (NumberFormatException e) {
-      maxComment = Integer.MAX_VALUE;
+      maxComment = DEFAULT_PAGE_SIZE;
+    }
+    return Math.max(1, Math.min(maxComment, MAX_PAGE_SIZE));
+  }
+
+  /**
+   * Returns the time in milliseconds since the epoch given in {@code name}, if any.
+   *
+   * @throws NumberFormatException if the value is not a number
+   */
+  private Optional<Long> getTimeFromParam(HttpServletRequest request, String name) {
+    String time = request.getParameter(name);
+    if (time == null || time.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(Long.parseLong(time));
+  }
+
+  /**
+   * Returns the comment properties listed in {@code fields}, in the order of
+   * {@link Comment#PROPERTIES}, if the client only wants some of them.
+   *
+   * @throws IllegalArgumentException if a listed property does not exist
+   */
+  private Optional<Set<String>> getFieldsFromParam(HttpServletRequest request) {
+    String fields = request.getParameter("fields");
+    if (fields == null || fields.isEmpty()) {
+      return Optional.empty();
+    }
+    Set<String> requested =
+        Arrays.stream(fields.split(",")).map(String::trim).collect(Collectors.toSet());
+    if (!Comment.PROPERTIES.containsAll(requested)) {
+      requested.removeAll(Comment.PROPERTIES);
+      throw new IllegalArgumentException("Unknown fields: " + String.join(",", requested));
+    }
+    Set<String> ordered = new LinkedHashSet<>(Comment.PROPERTIES);
+    ordered.retainAll(requested);
+    return Optional.of(ordered);
+  }
+
+  /** Returns the cursor the client got back with its previous page, if any. */
+  private Optional<String> getCursorFromParam(HttpServletRequest request) {
+    String cursor = request.getParameter("cursor");
+    if (cursor == null || cursor.isEmpty()) {
+      return Optional.empty();
     }
-    return maxComment;
+    return Optional.of(cursor);
   }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> userId = getUserId();
+    long waitNanos = WRITE_LIMITER.tryAcquire(
+        userId.map(user -> "user:" + user).orElse("ip:" + request.getRemoteAddr()));
+    if (waitNanos > 0) {
+      long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1;
+      response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+      response.sendError(SC_TOO_MANY_REQUESTS, "Too many comments. Please try again later.");
+      return;
+    }
 
     String firstName = getParameter(request, "first-name", "");
     String lastName = getParameter(request, "last-name", "");
@@ -95,15 +323,43 @@ public class DataServlet extends HttpServlet {
     Date commentDate = new Date();
     String id = UUID.randomUUID().toString();
 
-    Entity commentEntity = new Entity("Comment");
+    // A reply is filed under the path of the comment it answers.
+    String path = Comment.pathSegment(commentDate.getTime(), id);
+    String parentId = request.getParameter("parent-id");
+    if (parentId != null && !parentId.isEmpty()) {
+      Optional<Comment> parent = REPOSITORY.get(parentId);
+      if (!parent.isPresent()) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown parent comment.");
+        return;
+      }
+      if (parent.get().depth() >= Comment.MAX_DEPTH) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "Replies can be nested at most " + Comment.MAX_DEPTH + " deep.");
+        return;
+      }
+      path = parent.get().replyPath(commentDate.getTime(), id);
+    }
 
-    commentEntity.setProperty("firstName", firstName);
-    commentEntity.setProperty("lastName", lastName);
-    commentEntity.setProperty("commentText", commentText);
-    commentEntity.setProperty("date", commentDate.toString());
-    commentEntity.setProperty("id", id);
+    Comment comment = Comment.builder()
+        .setfirstName(firstName)
+        .setLastName(lastName)
+        .setCommentText(commentText)
+        .setDate(commentDate.toString())
+        .setTimestamp(commentDate.getTime())
+        .setId(id)
+        .setPath(path)
+        .setNickname(userId.map(LoginServlet.USERS::nickname).orElse(""))
+        .build();
 
-    datastore.put(commentEntity);
+    REPOSITORY.save(comment, userId);
+    // Indexed only once stored, so that a failed save cannot turn up in search results.
+    CommentSearchServlet.INDEX.add(comment);
+    // Comments still in the write-behind buffer invalidate the cache again once they are flushed.
+    CACHE.invalidate();
+    // The feed updates the list of top-level comments, which replies are not part of.
+    if (comment.depth() == 0) {
+      CommentFeedServlet.FEED.publish(comment);
+    }
     
     response.sendRedirect("/index.html#connect");
   }
@@ -111,27 +367,43 @@ public class DataServlet extends HttpServlet {
   @Override
   public void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String id = request.getParameter("id");
-    Query query;
-    PreparedQuery results;
-    if (!id.equals("all")) {
-      query =
-          new Query("Comment")
-              .setFilter(new Query.FilterPredicate("id", Query.FilterOperator.EQUAL, id));
-
-      results = datastore.prepare(query);
-      datastore.delete(results.asSingleEntity().getKey());
-    } else {
-      query = new Query("Comment").setKeysOnly();
-      results = datastore.prepare(query);
-    
-      for (Entity entity : results.asIterable()) {
-        datastore.delete(entity.getKey());
+    if (id.equals("all")) {
+      // When deleting runs as a background job the client polls /jobs for its progress.
+      Optional<JobStatus> job = REPOSITORY.deleteAll();
+      CACHE.invalidate();
+      CommentSearchServlet.INDEX.clear();
+      if (job.isPresent()) {
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setContentType("application/json;");
+        response.getWriter().println(Json.toJson(Json.JOB_STATUS, job.get()));
+        return;
       }
+    } else if (REPOSITORY.delete(id)) {
+      CACHE.invalidate();
+      CommentSearchServlet.INDEX.remove(id);
     }
 
     response.sendRedirect("/index.html#connect");
   }
 
+  /**
+   * Counts the comments a flush of {@link #WRITE_BUFFER} wrote and drops the cached pages they
+   * change. Only the Datastore repository writes through the buffer.
+   */
+  private static void flushed(List<Entity> written) {
+    ((DatastoreCommentRepository) REPOSITORY).countWritten(written);
+    CACHE.invalidate();
+  }
+
+  /** Returns the ID of the user posting, if they are logged in. */
+  private Optional<String> getUserId() {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn()) {
+      return Optional.empty();
+    }
+    return Optional.of(userService.getCurrentUser().getUserId());
+  }
+
   /**
    * @return the request parameter, or the default value if the parameter
    *         was not specified by the client
@@ -144,4 +416,25 @@ public class DataServlet extends HttpServlet {
     return value;
   }
 
+  /** Copies everything written to the response into a second stream. */
+  private static final class TeeOutputStream extends FilterOutputStream {
+    private final OutputStream copy;
+
+    TeeOutputStream(OutputStream out, OutputStream copy) {
+      super(out);
+      this.copy = copy;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      copy.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      copy.write(b, off, len);
+    }
+  }
 }
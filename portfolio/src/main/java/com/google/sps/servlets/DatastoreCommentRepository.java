@@ -0,0 +1,553 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreNeedIndexException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Comments stored as Datastore entities of kind {@code Comment}, keyed by their UUID. */
+final class DatastoreCommentRepository implements CommentRepository {
+  private static final Logger logger = Logger.getLogger(DatastoreCommentRepository.class.getName());
+
+  /** Comments read per round trip when iterating over all of them. */
+  private static final int CHUNK_SIZE = 500;
+
+  /** Times a transaction is tried before a conflict with other writers is given up on. */
+  private static final int TRANSACTION_ATTEMPTS = 3;
+
+  /** Counter of all comments. */
+  private static final String TOTAL_COUNTER = "comments";
+
+  /**
+   * Longest author name, in UTF-8 bytes, that is used in its counter's name as it is. Shorter names
+   * keep the counters they had before long names were hashed.
+   */
+  private static final int MAX_PLAIN_AUTHOR_BYTES = 256;
+
+  private final DatastoreService datastore;
+  private final Optional<CommentWriteBuffer> writeBuffer;
+  private final JobStore jobs;
+  private final ShardedCounter counters;
+  private final UserInfoStore users;
+
+  /** Sets of fields whose projection query has no composite index to run on. */
+  private final Set<Set<String>> unindexedProjections = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param writeBuffer if present, new comments are written through it in batches
+   * @param jobs runs the background job that deletes every comment
+   * @param counters keeps the number of comments, in total and by author
+   * @param users has the nicknames comments are shown with
+   */
+  DatastoreCommentRepository(DatastoreService datastore, Optional<CommentWriteBuffer> writeBuffer,
+      JobStore jobs, ShardedCounter counters, UserInfoStore users) {
+    this.datastore = datastore;
+    this.writeBuffer = writeBuffer;
+    this.jobs = jobs;
+    this.counters = counters;
+    this.users = users;
+  }
+
+  /**
+   * Reads the whole page before the first comment is returned, so that the nicknames of its
+   * authors are read with one batch get.
+   */
+  @Override
+  public Results<Comment> list(
+      Optional<Long> since, Optional<Long> until, int limit, Optional<String> cursor) {
+    QueryResultIterator<Entity> entities = run(query(since, until), limit, cursor);
+    List<Entity> page = new ArrayList<>(limit);
+    entities.forEachRemaining(page::add);
+    Iterator<Comment> comments = withNicknames(page).iterator();
+    return new Results<Comment>() {
+      @Override
+      public boolean hasNext() {
+        return comments.hasNext();
+      }
+
+      @Override
+      public Comment next() {
+        return comments.next();
+      }
+
+      @Override
+      public String cursor() {
+        return entities.getCursor().toWebSafeString();
+      }
+    };
+  }
+
+  /**
+   * Reads only the requested properties out of the index with a projection query. This needs a
+   * composite index that starts with {@code depth}; datastore-indexes.xml declares the ones for the
+   * list views, and other sets of fields fall back to reading whole comments. Comments missing one
+   * of the properties are not in the index, so they are left out.
+   */
+  @Override
+  public Results<Map<String, Object>> list(Optional<Long> since, Optional<Long> until, int limit,
+      Optional<String> cursor, Set<String> fields) {
+    if (fields.containsAll(Comment.PROPERTIES) || unindexedProjections.contains(fields)) {
+      return CommentRepository.super.list(since, until, limit, cursor, fields);
+    }
+
+    Query query = query(since, until);
+    for (String field : fields) {
+      query.addProjection(
+          new PropertyProjection(field, field.equals("timestamp") ? Long.class : String.class));
+    }
+    QueryResultIterator<Entity> entities;
+    try {
+      entities = run(query, limit, cursor);
+    } catch (DatastoreNeedIndexException e) {
+      unindexedProjections.add(fields);
+      return CommentRepository.super.list(since, until, limit, cursor, fields);
+    }
+    return new Results<Map<String, Object>>() {
+      @Override
+      public boolean hasNext() {
+        return entities.hasNext();
+      }
+
+      @Override
+      public Map<String, Object> next() {
+        Entity entity = entities.next();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (String field : fields) {
+          properties.put(field, entity.getProperty(field));
+        }
+        return properties;
+      }
+
+      @Override
+      public String cursor() {
+        return entities.getCursor().toWebSafeString();
+      }
+    };
+  }
+
+  /**
+   * Reads the replies with a range query on {@code path}, which returns them in path order. Unless
+   * every depth is asked for, the query also keeps to the depths in range with an IN filter on
+   * {@code depth}; Datastore runs one query per depth on the composite index of depth and path and
+   * merges them in path order, so deeper replies are never read.
+   */
+  @Override
+  public Optional<List<Comment>> thread(String id, int depth, int limit) {
+    Optional<Entity> root = find(id);
+    if (!root.isPresent()) {
+      return Optional.empty();
+    }
+    List<Entity> thread = new ArrayList<>();
+    thread.add(root.get());
+    Comment rootComment = Comment.fromEntity(root.get());
+    String path = rootComment.path();
+    int maxDepth = Math.min(rootComment.depth() + depth, Comment.MAX_DEPTH);
+    if (maxDepth == rootComment.depth() || limit == 1) {
+      return Optional.of(withNicknames(thread));
+    }
+
+    // '0' follows '/', so the range holds exactly the paths that start with the root's and a '/'.
+    List<Filter> filters = new ArrayList<>();
+    filters.add(new FilterPredicate("path", FilterOperator.GREATER_THAN, path + "/"));
+    filters.add(new FilterPredicate("path", FilterOperator.LESS_THAN, path + "0"));
+    if (maxDepth < Comment.MAX_DEPTH) {
+      List<Long> depths = new ArrayList<>();
+      for (long replyDepth = rootComment.depth() + 1; replyDepth <= maxDepth; replyDepth++) {
+        depths.add(replyDepth);
+      }
+      filters.add(new FilterPredicate("depth", FilterOperator.IN, depths));
+    }
+    Query query = new Query("Comment")
+        .setFilter(CompositeFilterOperator.and(filters))
+        .addSort("path", SortDirection.ASCENDING);
+    datastore.prepare(query).asIterable(FetchOptions.Builder.withLimit(limit - 1)
+        .chunkSize(Math.min(limit - 1, CHUNK_SIZE))).forEach(thread::add);
+    return Optional.of(withNicknames(thread));
+  }
+
+  @Override
+  public Optional<Comment> get(String id) {
+    return find(id).map(entity -> {
+      Comment comment = Comment.fromEntity(entity);
+      String userId = (String) entity.getProperty("userId");
+      return userId == null ? comment : comment.withNickname(users.nickname(userId));
+    });
+  }
+
+  @Override
+  public void save(Comment comment, Optional<String> userId) {
+    Entity entity = comment.toEntity();
+    entity.setUnindexedProperty("counted", true);
+    userId.ifPresent(id -> entity.setUnindexedProperty("userId", id));
+    // A full write-behind buffer pushes the write back onto the caller. Buffered comments are
+    // counted once they are written, by countWritten or writeHandedOff.
+    if (writeBuffer.map(buffer -> buffer.offer(entity)).orElse(false)) {
+      return;
+    }
+    inTransaction(txn -> {
+      datastore.put(txn, entity);
+      count(txn, comment.author(), 1);
+      return null;
+    });
+    applied(comment.author(), 1);
+  }
+
+  /**
+   * Counts comments the write-behind buffer has written, which were stored already marked as
+   * counted. As in {@link #purge}, each counter is changed in a transaction of its own. Nothing
+   * retries a failed change, so it is logged with what it takes to correct the counter.
+   */
+  void countWritten(List<Entity> written) {
+    Map<String, Long> deltas = new HashMap<>();
+    for (Entity entity : written) {
+      deltas.merge(TOTAL_COUNTER, 1L, Long::sum);
+      deltas.merge(authorCounter(Comment.fromEntity(entity).author()), 1L, Long::sum);
+    }
+    for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+      try {
+        increment(delta.getKey(), delta.getValue());
+      } catch (RuntimeException e) {
+        logger.log(Level.SEVERE,
+            "Could not add " + delta.getValue() + " to counter " + delta.getKey(), e);
+      }
+    }
+  }
+
+  /**
+   * Writes a comment the write-behind buffer handed off and counts it in the same transaction. A
+   * task that runs again after its transaction committed finds the comment stored and changes
+   * nothing.
+   */
+  void writeHandedOff(Entity entity) {
+    String author = Comment.fromEntity(entity).author();
+    boolean written = inTransaction(txn -> {
+      try {
+        datastore.get(txn, entity.getKey());
+        return false;
+      } catch (EntityNotFoundException e) {
+        entity.setUnindexedProperty("counted", true);
+        datastore.put(txn, entity);
+        count(txn, author, 1);
+        return true;
+      }
+    });
+    if (written) {
+      applied(author, 1);
+    }
+  }
+
+  @Override
+  public boolean delete(String id) {
+    Optional<Entity> found = find(id);
+    if (!found.isPresent()) {
+      return false;
+    }
+    Key key = found.get().getKey();
+    // The comment is read again in the transaction so that concurrent deletes only count once.
+    Optional<Entity> deleted = inTransaction(txn -> {
+      Entity entity;
+      try {
+        entity = datastore.get(txn, key);
+      } catch (EntityNotFoundException e) {
+        return Optional.empty();
+      }
+      datastore.delete(txn, key);
+      if (entity.hasProperty("counted")) {
+        count(txn, Comment.fromEntity(entity).author(), -1);
+      }
+      return Optional.of(entity);
+    });
+    deleted.filter(entity -> entity.hasProperty("counted"))
+        .ifPresent(entity -> applied(Comment.fromEntity(entity).author(), -1));
+    return deleted.isPresent();
+  }
+
+  @Override
+  public Optional<JobStatus> deleteAll() {
+    // Deleting everything can take thousands of batches, so it runs as a background job.
+    return Optional.of(jobs.start(PurgeCommentsServlet.JOB_TYPE, PurgeCommentsServlet.URL));
+  }
+
+  @Override
+  public long count(Optional<String> author) {
+    return counters.get(
+        author.map(DatastoreCommentRepository::authorCounter).orElse(TOTAL_COUNTER));
+  }
+
+  /**
+   * Adds the comment with the given key to the counts, unless it already is.
+   *
+   * @return whether the comment was counted by this call
+   */
+  boolean addToCounts(Key key) {
+    Optional<String> author = inTransaction(txn -> {
+      Entity entity;
+      try {
+        entity = datastore.get(txn, key);
+      } catch (EntityNotFoundException e) {
+        return Optional.empty();
+      }
+      if (entity.hasProperty("counted")) {
+        return Optional.empty();
+      }
+      entity.setUnindexedProperty("counted", true);
+      datastore.put(txn, entity);
+      String name = Comment.fromEntity(entity).author();
+      count(txn, name, 1);
+      return Optional.of(name);
+    });
+    author.ifPresent(name -> applied(name, 1));
+    return author.isPresent();
+  }
+
+  /**
+   * Deletes a batch of comments read by the purge job and counts them down. Comments posted while
+   * the job runs are counted and, if the job reaches them, counted down like any other. The
+   * comments are deleted first, so a batch that runs again finds nothing left to count down.
+   */
+  void purge(List<Entity> batch) {
+    List<Key> keys = new ArrayList<>(batch.size());
+    Map<String, Long> deltas = new HashMap<>();
+    for (Entity entity : batch) {
+      keys.add(entity.getKey());
+      if (entity.hasProperty("counted")) {
+        deltas.merge(TOTAL_COUNTER, -1L, Long::sum);
+        deltas.merge(authorCounter(Comment.fromEntity(entity).author()), -1L, Long::sum);
+      }
+    }
+    datastore.delete(keys);
+    // A batch can have hundreds of authors, more than one cross-group transaction may touch, so
+    // each counter is changed in a transaction of its own.
+    for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+      increment(delta.getKey(), delta.getValue());
+    }
+  }
+
+  /**
+   * Looks the comments up by key, so this takes at most two batch gets however many comments there
+   * are, and a query for each comment that is not found by key.
+   */
+  @Override
+  public List<Comment> current(List<Comment> comments) {
+    List<Key> keys = new ArrayList<>(comments.size());
+    for (Comment comment : comments) {
+      keys.add(Comment.key(comment.id()));
+    }
+    Map<Key, Entity> found = datastore.get(keys);
+    List<Entity> entities = new ArrayList<>(comments.size());
+    for (Comment comment : comments) {
+      Entity entity = found.get(Comment.key(comment.id()));
+      if (entity != null) {
+        entities.add(entity);
+      } else {
+        findById(comment.id()).ifPresent(entities::add);
+      }
+    }
+    return withNicknames(entities);
+  }
+
+  /** Reads comments in key order, which the built-in key index serves. */
+  @Override
+  public Results<Comment> all(int limit, Optional<String> cursor) {
+    QueryResultIterator<Entity> entities = run(new Query("Comment"), limit, cursor);
+    return new Results<Comment>() {
+      @Override
+      public boolean hasNext() {
+        return entities.hasNext();
+      }
+
+      @Override
+      public Comment next() {
+        return Comment.fromEntity(entities.next());
+      }
+
+      @Override
+      public String cursor() {
+        return entities.getCursor().toWebSafeString();
+      }
+    };
+  }
+
+  /**
+   * Returns the query for top-level comments in the time window, newest first. The filter on
+   * depth, the sort and the window all use the composite index of depth and timestamp, so every
+   * page is an index scan of at most a page of entities.
+   */
+  private static Query query(Optional<Long> since, Optional<Long> until) {
+    List<Filter> filters = new ArrayList<>();
+    filters.add(new FilterPredicate("depth", FilterOperator.EQUAL, 0L));
+    since.ifPresent(time ->
+        filters.add(new FilterPredicate("timestamp", FilterOperator.GREATER_THAN_OR_EQUAL, time)));
+    until.ifPresent(time ->
+        filters.add(new FilterPredicate("timestamp", FilterOperator.LESS_THAN, time)));
+    return new Query("Comment")
+        .setFilter(filters.size() == 1 ? filters.get(0) : CompositeFilterOperator.and(filters))
+        .addSort("timestamp", SortDirection.DESCENDING);
+  }
+
+  /**
+   * Runs the query and fetches its first batch.
+   *
+   * @throws IllegalArgumentException if the cursor was not produced by this query
+   * @throws DatastoreNeedIndexException if the query has no index to run on
+   */
+  private QueryResultIterator<Entity> run(Query query, int limit, Optional<String> cursor) {
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
+    cursor.ifPresent(webSafe -> fetchOptions.startCursor(Cursor.fromWebSafeString(webSafe)));
+    QueryResultIterator<Entity> entities =
+        datastore.prepare(query).asQueryResultIterator(fetchOptions);
+    // Fetching the first batch is what surfaces both errors, so they are thrown here rather than
+    // after the response has started.
+    entities.hasNext();
+    return entities;
+  }
+
+  /**
+   * Reads comments from their entities along with the current nicknames of the accounts they were
+   * posted from, which takes at most one batch get for all of them.
+   */
+  private List<Comment> withNicknames(List<Entity> entities) {
+    Set<String> userIds = new HashSet<>();
+    for (Entity entity : entities) {
+      String userId = (String) entity.getProperty("userId");
+      if (userId != null) {
+        userIds.add(userId);
+      }
+    }
+    Map<String, String> nicknames = users.nicknames(userIds);
+
+    List<Comment> comments = new ArrayList<>(entities.size());
+    for (Entity entity : entities) {
+      Comment comment = Comment.fromEntity(entity);
+      String userId = (String) entity.getProperty("userId");
+      comments.add(userId == null ? comment : comment.withNickname(nicknames.get(userId)));
+    }
+    return comments;
+  }
+
+  private void count(Transaction txn, String author, long delta) {
+    counters.increment(txn, TOTAL_COUNTER, delta);
+    counters.increment(txn, authorCounter(author), delta);
+  }
+
+  private void applied(String author, long delta) {
+    counters.applied(TOTAL_COUNTER, delta);
+    counters.applied(authorCounter(author), delta);
+  }
+
+  /** Changes one counter in a transaction of its own. */
+  private void increment(String counter, long delta) {
+    inTransaction(txn -> {
+      counters.increment(txn, counter, delta);
+      return null;
+    });
+    counters.applied(counter, delta);
+  }
+
+  /**
+   * Returns the name of the counter of comments signed with {@code author}. Counter names end up
+   * in shard key names, which Datastore limits to 500 bytes, so names too long for that are
+   * replaced by their SHA-256 digest under a prefix no plain name can have.
+   */
+  private static String authorCounter(String author) {
+    byte[] bytes = author.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= MAX_PLAIN_AUTHOR_BYTES) {
+      return "comments-by:" + author;
+    }
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      return "comments-by-sha256:" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Runs {@code work} in a cross-group transaction, which a comment and the counter shards it
+   * changes need. The transaction is tried again if it conflicts with another writer.
+   */
+  private <T> T inTransaction(Function<Transaction, T> work) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        T result = work.apply(txn);
+        txn.commit();
+        return result;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the entity of the comment with the given UUID. Comments are looked up by key; the
+   * property query only runs for comments written before they were keyed by UUID and not migrated
+   * yet.
+   */
+  private Optional<Entity> find(String id) {
+    try {
+      return Optional.of(datastore.get(Comment.key(id)));
+    } catch (EntityNotFoundException e) {
+      return findById(id);
+    }
+  }
+
+  /** Queries for the entity of the comment by its {@code id} property, whatever its key. */
+  private Optional<Entity> findById(String id) {
+    Query query =
+        new Query("Comment").setFilter(new FilterPredicate("id", FilterOperator.EQUAL, id));
+    return Optional.ofNullable(datastore.prepare(query).asSingleEntity());
+  }
+}
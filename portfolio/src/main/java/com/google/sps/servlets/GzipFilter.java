@@ -0,0 +1,347 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Compresses JSON responses with gzip for clients that accept it. A body is held back until it
+ * grows past {@code compression.thresholdBytes}: smaller bodies are sent as they are, since gzip
+ * would barely shrink them, while larger ones are compressed as they are written rather than
+ * buffered whole.
+ *
+ * <p>The filter is not async supported, so it must not be mapped to async servlets such as
+ * /comments/live. A servlet that sets a {@link WriteListener} gets an uncompressed body, since the
+ * gzip stream writes on its own schedule and cannot wait for the client.
+ */
+@WebFilter({"/data", "/data/count", "/login", "/comments/search"})
+public class GzipFilter implements Filter {
+
+  /** Smallest body, in bytes, that is compressed. */
+  static final int THRESHOLD = Integer.getInteger("compression.thresholdBytes", 1_024);
+
+  /** Request attribute holding the response wrapper, so servlets can send precompressed bodies. */
+  private static final String RESPONSE_ATTRIBUTE = GzipFilter.class.getName() + ".response";
+
+  private static final AtomicLong bytesIn = new AtomicLong();
+  private static final AtomicLong bytesOut = new AtomicLong();
+  private static final AtomicLong compressed = new AtomicLong();
+  private static final AtomicLong precompressed = new AtomicLong();
+
+  @Override
+  public void init(FilterConfig config) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    httpResponse.addHeader("Vary", "Accept-Encoding");
+    if (!acceptsGzip(httpRequest.getHeader("Accept-Encoding"))) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    CompressingResponse compressing = new CompressingResponse(httpResponse);
+    request.setAttribute(RESPONSE_ATTRIBUTE, compressing);
+    try {
+      chain.doFilter(request, compressing);
+    } finally {
+      request.removeAttribute(RESPONSE_ATTRIBUTE);
+    }
+    compressing.finish();
+  }
+
+  @Override
+  public void destroy() {}
+
+  /**
+   * Sends a cached body, reusing its compressed form when this filter would compress it anyway.
+   */
+  static void writeCached(
+      HttpServletRequest request, HttpServletResponse response, CommentPageCache.Body body)
+      throws IOException {
+    if (request.getAttribute(RESPONSE_ATTRIBUTE) == response && body.bytes().length > THRESHOLD) {
+      ((CompressingResponse) response).writeCompressed(body.bytes().length, body.gzipped());
+    } else {
+      response.getOutputStream().write(body.bytes());
+    }
+  }
+
+  /**
+   * Returns whether an {@code Accept-Encoding} header allows gzip: it names {@code gzip} or
+   * {@code *} with a q-value above 0. An explicit {@code gzip} entry takes precedence over
+   * {@code *}.
+   */
+  static boolean acceptsGzip(String header) {
+    if (header == null) {
+      return false;
+    }
+    Optional<Boolean> wildcard = Optional.empty();
+    for (String entry : header.split(",")) {
+      String[] parts = entry.split(";");
+      String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+      if (!coding.equals("gzip") && !coding.equals("x-gzip") && !coding.equals("*")) {
+        continue;
+      }
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2).trim());
+          } catch (NumberFormatException e) {
+            // A malformed q-value does not say the client refuses the coding, so it is ignored.
+          }
+        }
+      }
+      if (!coding.equals("*")) {
+        return quality > 0;
+      }
+      wildcard = Optional.of(quality > 0);
+    }
+    return wildcard.orElse(false);
+  }
+
+  /** Returns {@code bytes} in gzip format. */
+  static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Returns the bytes servlets wrote, the bytes sent after compression, and how many responses
+   * were compressed as they were written or sent from a precompressed cache entry.
+   */
+  static Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("bytesIn", bytesIn.get());
+    stats.put("bytesOut", bytesOut.get());
+    stats.put("compressedResponses", compressed.get());
+    stats.put("precompressedResponses", precompressed.get());
+    return stats;
+  }
+
+  /** Response whose body is compressed once it grows past the threshold. */
+  private static final class CompressingResponse extends HttpServletResponseWrapper {
+    private final CompressingStream stream;
+    private PrintWriter writer;
+    private boolean finished;
+
+    CompressingResponse(HttpServletResponse response) {
+      super(response);
+      this.stream = new CompressingStream(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      if (writer != null) {
+        throw new IllegalStateException("getWriter() has already been called");
+      }
+      return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+      }
+      return writer;
+    }
+
+    // The length is only known once it is decided whether the body is compressed.
+    @Override
+    public void setContentLength(int length) {}
+
+    @Override
+    public void setContentLengthLong(long length) {}
+
+    @Override
+    public void flushBuffer() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      stream.flush();
+    }
+
+    void writeCompressed(int length, byte[] gzipped) throws IOException {
+      finished = true;
+      HttpServletResponse response = (HttpServletResponse) getResponse();
+      response.setHeader("Content-Encoding", "gzip");
+      response.setContentLength(gzipped.length);
+      response.getOutputStream().write(gzipped);
+      bytesIn.addAndGet(length);
+      bytesOut.addAndGet(gzipped.length);
+      precompressed.incrementAndGet();
+    }
+
+    void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (writer != null) {
+        writer.flush();
+      }
+      stream.finish();
+    }
+  }
+
+  /**
+   * Holds the body back until it passes the threshold, then compresses it as it is written. Once a
+   * write listener is set the body passes straight through instead.
+   */
+  private static final class CompressingStream extends ServletOutputStream {
+    private final HttpServletResponse response;
+    private final ByteArrayOutputStream held = new ByteArrayOutputStream();
+    private GZIPOutputStream gzip;
+    private ServletOutputStream passThrough;
+
+    CompressingStream(HttpServletResponse response) {
+      this.response = response;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      bytesIn.addAndGet(len);
+      if (passThrough != null) {
+        passThrough.write(b, off, len);
+        bytesOut.addAndGet(len);
+        return;
+      }
+      if (gzip == null && held.size() + len > THRESHOLD) {
+        response.setHeader("Content-Encoding", "gzip");
+        // Sync flushing lets a flush from the servlet reach the client while the body streams.
+        gzip = new GZIPOutputStream(new CountingStream(response.getOutputStream()), true);
+        held.writeTo(gzip);
+        held.reset();
+        compressed.incrementAndGet();
+      }
+      if (gzip != null) {
+        gzip.write(b, off, len);
+      } else {
+        held.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // A held back body is not sent early, since that would settle it as uncompressed.
+      if (passThrough != null) {
+        passThrough.flush();
+      } else if (gzip != null) {
+        gzip.flush();
+      }
+    }
+
+    void finish() throws IOException {
+      if (passThrough != null) {
+        return;
+      }
+      if (gzip != null) {
+        gzip.finish();
+      } else if (held.size() > 0) {
+        response.setContentLength(held.size());
+        held.writeTo(response.getOutputStream());
+        bytesOut.addAndGet(held.size());
+      }
+    }
+
+    @Override
+    public boolean isReady() {
+      return passThrough == null || passThrough.isReady();
+    }
+
+    /**
+     * Settles the body as uncompressed and hands the listener to the container's stream. A body
+     * that is already being compressed cannot switch to non-blocking writes.
+     */
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      if (gzip != null) {
+        throw new IllegalStateException("The response is already being compressed");
+      }
+      try {
+        passThrough = response.getOutputStream();
+        // Written while the servlet still wrote blocking, so it may block here as well.
+        held.writeTo(passThrough);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      bytesOut.addAndGet(held.size());
+      held.reset();
+      passThrough.setWriteListener(listener);
+    }
+  }
+
+  /** Counts the compressed bytes on their way to the client. */
+  private static final class CountingStream extends OutputStream {
+    private final OutputStream out;
+
+    CountingStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      bytesOut.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      bytesOut.addAndGet(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that starts maintenance jobs and reports the progress of background batch jobs. */
+@WebServlet("/jobs")
+public class JobServlet extends HttpServlet {
+
+  /** Task URL of every job that an admin can start by its type. */
+  private static final Map<String, String> MAINTENANCE_JOBS = new HashMap<>();
+
+  static {
+    MAINTENANCE_JOBS.put(RekeyCommentsServlet.JOB_TYPE, RekeyCommentsServlet.URL);
+    MAINTENANCE_JOBS.put(BackfillTimestampsServlet.JOB_TYPE, BackfillTimestampsServlet.URL);
+    MAINTENANCE_JOBS.put(CountCommentsServlet.JOB_TYPE, CountCommentsServlet.URL);
+    MAINTENANCE_JOBS.put(BackfillDepthsServlet.JOB_TYPE, BackfillDepthsServlet.URL);
+  }
+
+  private final UserService userService = UserServiceFactory.getUserService();
+  private final JobStore jobs = new JobStore();
+
+  /** Starts the maintenance job named by the {@code type} parameter. Only admins may do this. */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    String taskUrl = MAINTENANCE_JOBS.get(request.getParameter("type"));
+    if (taskUrl == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown job type.");
+      return;
+    }
+
+    String json = Json.toJson(Json.JOB_STATUS, jobs.start(request.getParameter("type"), taskUrl));
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+    response.setContentType("application/json;");
+    response.getWriter().println(json);
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<Entity> job;
+    try {
+      job = jobs.get(Long.parseLong(request.getParameter("id")));
+    } catch (NumberFormatException e) {
+      job = Optional.empty();
+    }
+    if (!job.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String json = Json.toJson(Json.JOB_STATUS, JobStatus.fromEntity(job.get()));
+    response.setContentType("application/json;");
+    response.getWriter().println(json);
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.auto.value.AutoValue;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+
+/** Progress of a background batch job, as reported to clients. */
+@AutoValue
+public abstract class JobStatus {
+  static final String RUNNING = "running";
+  static final String DONE = "done";
+
+  abstract long id();
+  abstract String type();
+  abstract String state();
+  abstract long batches();
+  abstract long processed();
+
+  /** Reads the status out of a job entity kept by {@link JobStore}. */
+  static JobStatus fromEntity(Entity job) {
+    return new AutoValue_JobStatus(
+        job.getKey().getId(),
+        (String) job.getProperty("type"),
+        (String) job.getProperty("state"),
+        (Long) job.getProperty("batches"),
+        (Long) job.getProperty("processed"));
+  }
+
+  static TypeAdapter<JobStatus> typeAdapter(Gson gson) {
+    return new AutoValue_JobStatus.GsonTypeAdapter(gson);
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Keeps the state of background batch jobs in Datastore and chains their batches through the
+ * default task queue. Each batch is one task, so a job survives instance restarts and picks up
+ * from the cursor of the last batch it recorded.
+ */
+final class JobStore {
+  static final String KIND = "Job";
+
+  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final Queue queue = QueueFactory.getDefaultQueue();
+
+  /** Creates a job of the given type and enqueues its first batch to {@code taskUrl}. */
+  JobStatus start(String type, String taskUrl) {
+    Entity job = new Entity(KIND);
+    job.setProperty("type", type);
+    job.setProperty("taskUrl", taskUrl);
+    job.setProperty("state", JobStatus.RUNNING);
+    job.setProperty("batches", 0L);
+    job.setProperty("processed", 0L);
+    job.setUnindexedProperty("cursor", null);
+    job.setProperty("updated", new Date());
+    Key key = datastore.put(job);
+
+    queue.add(withUrl(taskUrl).param("job", Long.toString(key.getId())).param("batch", "0"));
+    return JobStatus.fromEntity(job);
+  }
+
+  /** Returns the job entity with the given id, if it exists. */
+  Optional<Entity> get(long id) {
+    try {
+      return Optional.of(datastore.get(KeyFactory.createKey(KIND, id)));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Records that {@code batch} processed {@code processed} entities and stopped at {@code cursor},
+   * then enqueues the next batch unless the job is {@code done}. The task is added in the same
+   * transaction, so a batch is recorded and chained exactly once even if its task is retried.
+   *
+   * @return false if the batch had already been recorded by an earlier delivery of the task
+   */
+  boolean recordBatch(long id, long batch, int processed, Cursor cursor, boolean done) {
+    Transaction txn = datastore.beginTransaction();
+    try {
+      Entity job = datastore.get(txn, KeyFactory.createKey(KIND, id));
+      if ((Long) job.getProperty("batches") != batch) {
+        return false;
+      }
+      job.setProperty("batches", batch + 1);
+      job.setProperty("processed", (Long) job.getProperty("processed") + processed);
+      job.setUnindexedProperty("cursor", cursor == null ? null : cursor.toWebSafeString());
+      job.setProperty("state", done ? JobStatus.DONE : JobStatus.RUNNING);
+      job.setProperty("updated", new Date());
+      datastore.put(txn, job);
+
+      if (!done) {
+        queue.add(txn, withUrl((String) job.getProperty("taskUrl"))
+            .param("job", Long.toString(id))
+            .param("batch", Long.toString(batch + 1)));
+      }
+      txn.commit();
+      return true;
+    } catch (EntityNotFoundException e) {
+      return false;
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+}
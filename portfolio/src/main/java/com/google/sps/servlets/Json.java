@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/** The Gson instance every servlet serializes its responses with. */
+final class Json {
+
+  static final Gson GSON =
+      new GsonBuilder().registerTypeAdapterFactory(PortfolioTypeAdapterFactory.create()).create();
+
+  // Looking the adapters up here builds them once, when the class is loaded, instead of on the
+  // first request that needs them. Gson caches them for later lookups.
+  static final TypeAdapter<Comment> COMMENT = GSON.getAdapter(Comment.class);
+  static final TypeAdapter<List<Comment>> COMMENTS =
+      GSON.getAdapter(new TypeToken<List<Comment>>() {});
+  static final TypeAdapter<JobStatus> JOB_STATUS = GSON.getAdapter(JobStatus.class);
+  static final TypeAdapter<UserInfo> USER_INFO = GSON.getAdapter(UserInfo.class);
+  static final TypeAdapter<CommentCount> COMMENT_COUNT = GSON.getAdapter(CommentCount.class);
+  /** Comments of which only some properties were read, see {@link Comment#properties}. */
+  static final TypeAdapter<Map<String, Object>> PROPERTIES =
+      GSON.getAdapter(new TypeToken<Map<String, Object>>() {});
+
+  private Json() {}
+
+  /**
+   * Serializes {@code value} with an adapter looked up above. Unlike {@link TypeAdapter#toJson},
+   * this escapes HTML characters the way {@link #GSON} does.
+   */
+  static <T> String toJson(TypeAdapter<T> adapter, T value) {
+    StringWriter json = new StringWriter();
+    try {
+      JsonWriter writer = newJsonWriter(json);
+      adapter.write(writer, value);
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return json.toString();
+  }
+
+  /** Returns a writer with the settings of {@link #GSON}, which it does not all copy itself. */
+  static JsonWriter newJsonWriter(Writer out) throws IOException {
+    JsonWriter writer = GSON.newJsonWriter(out);
+    writer.setHtmlSafe(GSON.htmlSafe());
+    return writer;
+  }
+}
@@ -14,18 +14,14 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.users.User;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.gson.Gson;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.Optional;
-import java.util.NoSuchElementException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -34,32 +30,44 @@ import javax.servlet.http.HttpServletResponse;
 /** Servlet that checks if user is logged in and sets nickname. */
 @WebServlet("/login")
 public class LoginServlet extends HttpServlet {
-  
+
+  /** Nicknames of recent visitors and comment authors, shared with {@link StatsServlet}. */
+  static final NicknameCache NICKNAMES = new NicknameCache(
+      Integer.getInteger("login.nicknameCache.capacity", 1_000),
+      Long.getLong("login.nicknameCache.maxAgeMillis", 60_000L));
+
+  /** Nicknames of every user, shared with the comment repository to show them on comments. */
+  static final UserInfoStore USERS =
+      new UserInfoStore(DatastoreServiceFactory.getDatastoreService(), NICKNAMES);
+
+  /**
+   * Signed cookies holding the response for the user who got it, so that repeat calls skip the
+   * Users API and Datastore. Only present when {@code login.sessionCookie.enabled} is set.
+   */
+  static final Optional<SessionTokens> TOKENS = Boolean.getBoolean("login.sessionCookie.enabled")
+      ? Optional.of(new SessionTokens("login-info", "/login", sessionCookieSecret(),
+          Long.getLong("login.sessionCookie.maxAgeMillis", 600_000L)))
+      : Optional.empty();
+
   private final UserService userService = UserServiceFactory.getUserService();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-
+    Optional<String> cached = TOKENS.flatMap(tokens -> tokens.read(request));
+    if (cached.isPresent()) {
+      response.setContentType("application/json;");
+      response.getWriter().println(cached.get());
+      return;
+    }
 
     if (userService.isUserLoggedIn()) {
-      Gson gson = new Gson();
-      User user = userService.getCurrentUser();
-      String logoutUrl = userService.createLogoutURL("/");
-
-      String nickname;
-      try {
-        Entity userInfoEntity = getUserInfoEntity(user.getUserId()).get();
-        nickname = (String) userInfoEntity.getProperty("nickname");
-      } catch (Exception NoSuchElementException) {
-        nickname = "";
-      }
-      UserInfo userInfo = new UserInfo(user, nickname, logoutUrl);
-
-      String json = gson.toJson(userInfo);
+      String json = getUserInfoJson();
+      TOKENS.ifPresent(tokens -> tokens.write(request, response, json));
       
       response.setContentType("application/json;");
       response.getWriter().println(json);
     } else {
+      TOKENS.ifPresent(tokens -> tokens.clear(request, response));
       String loginUrl = userService.createLoginURL("/");
       response.sendRedirect(loginUrl);
     }
@@ -70,37 +78,42 @@ public class LoginServlet extends HttpServlet {
     String nickname = getParameter(request, "nickname").orElse("");
     String id = userService.getCurrentUser().getUserId();
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-
-    Entity userInfoEntity;
-    // Do not create another entity to set nickname if it already exists.
-    try {
-      userInfoEntity = getUserInfoEntity(id).get();
-    } catch (Exception NoSuchElementException) {
-      userInfoEntity = new Entity("UserInfo");
-      userInfoEntity.setProperty("id", id);
+    USERS.setNickname(id, nickname);
+    // Cached comment pages and the signed cookie show the old nickname.
+    DataServlet.CACHE.invalidate();
+    if (TOKENS.isPresent()) {
+      TOKENS.get().write(request, response, getUserInfoJson());
     }
 
-    userInfoEntity.setProperty("nickname", nickname);
-    datastore.put(userInfoEntity);
-
     response.sendRedirect("/index.html");
   }
 
-  private Optional<String> getParameter(HttpServletRequest request, String name) {
-    return Optional.ofNullable(request.getParameter(name));
+  /** Returns the response for the logged in user. */
+  private String getUserInfoJson() {
+    User user = userService.getCurrentUser();
+    String logoutUrl = userService.createLogoutURL("/");
+
+    String nickname = USERS.nickname(user.getUserId());
+    UserInfo userInfo = UserInfo.create(user, nickname, logoutUrl);
+
+    return Json.toJson(Json.USER_INFO, userInfo);
   }
 
   /**
-   * Returns the UserInfo entity with user id.
-   * Given id is not of UserInfo kind but a field of that kind.
+   * Returns the key the session cookies are signed with: {@code login.sessionCookie.secret} if set,
+   * so that every instance accepts the cookies of the others, or else a random key per instance.
    */
-  private Optional<Entity> getUserInfoEntity(String id) {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Query query =
-        new Query("UserInfo")
-            .setFilter(new Query.FilterPredicate("id", Query.FilterOperator.EQUAL, id));
-    PreparedQuery results = datastore.prepare(query);
-    return Optional.ofNullable(results.asSingleEntity());
+  private static byte[] sessionCookieSecret() {
+    String secret = System.getProperty("login.sessionCookie.secret");
+    if (secret != null && !secret.isEmpty()) {
+      return secret.getBytes(StandardCharsets.UTF_8);
+    }
+    byte[] random = new byte[32];
+    new SecureRandom().nextBytes(random);
+    return random;
+  }
+
+  private Optional<String> getParameter(HttpServletRequest request, String name) {
+    return Optional.ofNullable(request.getParameter(name));
   }
 }
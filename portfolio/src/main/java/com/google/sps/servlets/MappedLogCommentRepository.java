@@ -0,0 +1,470 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Comments kept in an append-only log file that is memory-mapped, with an in-memory index of where
+ * the latest version of each comment starts. It needs nothing from App Engine, which makes it a
+ * fast local backend for load tests and a baseline for the cost of the servlet layer alone.
+ *
+ * <p>Every record is {@code [int length][byte operation][payload]}. The length is written last,
+ * so a record cut short by a crash still reads as the end of the log. The file is replayed to
+ * rebuild the index when it is opened. Offsets are {@code int}s, so a log holds at most 2 GB.
+ * There are no user accounts here, so comments never have a nickname.
+ */
+final class MappedLogCommentRepository implements CommentRepository, Closeable {
+
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final int HEADER_SIZE = Integer.BYTES + 1;
+  private static final int INITIAL_SIZE = 1 << 20;
+
+  /** Position of a comment in the listing order: newest first, then by id. */
+  private static final class SortKey implements Comparable<SortKey> {
+    final long timestamp;
+    final String id;
+
+    SortKey(long timestamp, String id) {
+      this.timestamp = timestamp;
+      this.id = id;
+    }
+
+    @Override
+    public int compareTo(SortKey other) {
+      int byTime = Long.compare(other.timestamp, timestamp);
+      return byTime != 0 ? byTime : id.compareTo(other.id);
+    }
+  }
+
+  private final FileChannel channel;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private MappedByteBuffer log;
+  private int end;
+  /**
+   * Bumped whenever the log is started over, after which offsets taken from the old one point at
+   * unrelated records. Only written under the write lock.
+   */
+  private volatile long generation;
+
+  /** Offset of the latest record of every live comment. */
+  private final Map<String, Integer> offsets = new HashMap<>();
+  /** Listing order of the top-level comments; replies are only reached through their path. */
+  private final Map<String, SortKey> sortKeys = new HashMap<>();
+  private final NavigableMap<SortKey, Integer> byTime = new TreeMap<>();
+  private final Map<String, String> paths = new HashMap<>();
+  private final NavigableMap<String, Integer> byPath = new TreeMap<>();
+  private final Map<String, String> authors = new HashMap<>();
+  private final Map<String, Long> commentsByAuthor = new HashMap<>();
+
+  /** Opens the log at {@code path}, creating it if needed, and replays it into the index. */
+  MappedLogCommentRepository(Path path) throws IOException {
+    channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    log = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+
+    while (end + HEADER_SIZE <= log.capacity()) {
+      int length = log.getInt(end);
+      if (length == 0 || end + HEADER_SIZE + length > log.capacity()) {
+        break;
+      }
+      if (log.get(end + Integer.BYTES) == PUT) {
+        index(read(end), end);
+      } else {
+        unindex(readDeletedId(end));
+      }
+      end += HEADER_SIZE + length;
+    }
+  }
+
+  @Override
+  public Results<Comment> list(
+      Optional<Long> since, Optional<Long> until, int limit, Optional<String> cursor) {
+    NavigableMap<SortKey, Integer> page;
+    long pageGeneration;
+    lock.readLock().lock();
+    try {
+      pageGeneration = generation;
+      NavigableMap<SortKey, Integer> candidates = byTime;
+      if (cursor.isPresent()) {
+        candidates = candidates.tailMap(decodeCursor(cursor.get()), false);
+      } else if (until.isPresent()) {
+        // The empty id sorts first among comments made one millisecond before until.
+        candidates = candidates.tailMap(new SortKey(until.get() - 1, ""), true);
+      }
+
+      page = new TreeMap<>();
+      for (Map.Entry<SortKey, Integer> entry : candidates.entrySet()) {
+        if (page.size() == limit
+            || (since.isPresent() && entry.getKey().timestamp < since.get())) {
+          break;
+        }
+        if (!until.isPresent() || entry.getKey().timestamp < until.get()) {
+          page.put(entry.getKey(), entry.getValue());
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // The comments are read as the page is walked, so a log started over in the meantime ends the
+    // page rather than have it read the new log at the old offsets.
+    Iterator<Map.Entry<SortKey, Integer>> entries = page.entrySet().iterator();
+    return new Results<Comment>() {
+      private SortKey last = cursor.map(MappedLogCommentRepository::decodeCursor).orElse(null);
+
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext() && generation == pageGeneration;
+      }
+
+      /** @throws ConcurrentModificationException if every comment was deleted since the listing */
+      @Override
+      public Comment next() {
+        Map.Entry<SortKey, Integer> entry = entries.next();
+        lock.readLock().lock();
+        try {
+          if (generation != pageGeneration) {
+            throw new ConcurrentModificationException("The comments were deleted while listed");
+          }
+          last = entry.getKey();
+          return read(entry.getValue());
+        } finally {
+          lock.readLock().unlock();
+        }
+      }
+
+      @Override
+      public String cursor() {
+        return last == null ? "" : encodeCursor(last);
+      }
+    };
+  }
+
+  @Override
+  public Optional<List<Comment>> thread(String id, int depth, int limit) {
+    lock.readLock().lock();
+    try {
+      Integer rootOffset = offsets.get(id);
+      if (rootOffset == null) {
+        return Optional.empty();
+      }
+      Comment root = read(rootOffset);
+      List<Comment> thread = new ArrayList<>();
+      thread.add(root);
+      int maxDepth = root.depth() + depth;
+      // Every path that starts with the root's and a '/', which '0' follows. A reply at the
+      // deepest level asked for is followed by its own replies, which are skipped over by
+      // continuing from its path and a '0' without being read.
+      String end = root.path() + "0";
+      String from = root.path() + "/";
+      while (depth > 0 && thread.size() < limit) {
+        Map.Entry<String, Integer> reply = byPath.ceilingEntry(from);
+        if (reply == null || reply.getKey().compareTo(end) >= 0) {
+          break;
+        }
+        thread.add(read(reply.getValue()));
+        from = reply.getKey() + (Comment.depth(reply.getKey()) < maxDepth ? "/" : "0");
+      }
+      return Optional.of(thread);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Comment> get(String id) {
+    lock.readLock().lock();
+    try {
+      Integer offset = offsets.get(id);
+      return offset == null ? Optional.empty() : Optional.of(read(offset));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void save(Comment comment, Optional<String> userId) {
+    byte[][] strings = {
+        utf8(comment.firstName()), utf8(comment.lastName()), utf8(comment.commentText()),
+        utf8(comment.date()), utf8(comment.id())};
+    byte[] path = utf8(comment.path());
+    int length = Long.BYTES + Integer.BYTES + path.length;
+    for (byte[] string : strings) {
+      length += Integer.BYTES + string.length;
+    }
+
+    lock.writeLock().lock();
+    try {
+      int offset = reserve(length);
+      ByteBuffer record = log.duplicate();
+      record.position(offset + Integer.BYTES);
+      record.put(PUT);
+      for (byte[] string : strings) {
+        record.putInt(string.length).put(string);
+      }
+      record.putLong(comment.timestamp());
+      record.putInt(path.length).put(path);
+      commit(offset, length);
+      index(comment, offset);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean delete(String id) {
+    byte[] bytes = utf8(id);
+    int length = Integer.BYTES + bytes.length;
+
+    lock.writeLock().lock();
+    try {
+      if (!offsets.containsKey(id)) {
+        return false;
+      }
+      int offset = reserve(length);
+      ByteBuffer record = log.duplicate();
+      record.position(offset + Integer.BYTES);
+      record.put(DELETE).putInt(bytes.length).put(bytes);
+      commit(offset, length);
+      unindex(id);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<JobStatus> deleteAll() {
+    lock.writeLock().lock();
+    try {
+      // Nothing in the log is live any more, so start a new one rather than append tombstones.
+      channel.truncate(0);
+      log = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_SIZE);
+      end = 0;
+      generation++;
+      offsets.clear();
+      sortKeys.clear();
+      byTime.clear();
+      paths.clear();
+      byPath.clear();
+      authors.clear();
+      commentsByAuthor.clear();
+      return Optional.empty();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not truncate the comment log", e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long count(Optional<String> author) {
+    lock.readLock().lock();
+    try {
+      return author.isPresent()
+          ? commentsByAuthor.getOrDefault(author.get(), 0L)
+          : offsets.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads comments in path order. The whole page is read under one lock, so it cannot see the
+   * log change underneath it; the cursor is the last path read.
+   */
+  @Override
+  public Results<Comment> all(int limit, Optional<String> cursor) {
+    List<Comment> page = new ArrayList<>(limit);
+    String last = cursor.map(MappedLogCommentRepository::decodePathCursor).orElse(null);
+    lock.readLock().lock();
+    try {
+      NavigableMap<String, Integer> candidates =
+          last == null ? byPath : byPath.tailMap(last, false);
+      for (Map.Entry<String, Integer> entry : candidates.entrySet()) {
+        if (page.size() == limit) {
+          break;
+        }
+        page.add(read(entry.getValue()));
+        last = entry.getKey();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    Iterator<Comment> comments = page.iterator();
+    String next = last == null ? "" : encodePathCursor(last);
+    return new Results<Comment>() {
+      @Override
+      public boolean hasNext() {
+        return comments.hasNext();
+      }
+
+      @Override
+      public Comment next() {
+        return comments.next();
+      }
+
+      @Override
+      public String cursor() {
+        return next;
+      }
+    };
+  }
+
+  /** Flushes the mapped pages to disk and closes the file. */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      log.force();
+      channel.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns the offset of a new record with a payload of {@code length} bytes. */
+  private int reserve(int length) {
+    long needed = (long) end + HEADER_SIZE + length + Integer.BYTES;
+    if (needed > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The comment log is full");
+    }
+    if (needed > log.capacity()) {
+      long size = Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * log.capacity()));
+      try {
+        log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not grow the comment log", e);
+      }
+    }
+    return end;
+  }
+
+  /** Publishes a record whose payload is written, by setting its length. */
+  private void commit(int offset, int length) {
+    log.putInt(offset, length);
+    end = offset + HEADER_SIZE + length;
+  }
+
+  private void index(Comment comment, int offset) {
+    unindex(comment.id());
+    offsets.put(comment.id(), offset);
+    if (comment.depth() == 0) {
+      SortKey key = new SortKey(comment.timestamp(), comment.id());
+      sortKeys.put(comment.id(), key);
+      byTime.put(key, offset);
+    }
+    paths.put(comment.id(), comment.path());
+    byPath.put(comment.path(), offset);
+    authors.put(comment.id(), comment.author());
+    commentsByAuthor.merge(comment.author(), 1L, Long::sum);
+  }
+
+  private void unindex(String id) {
+    offsets.remove(id);
+    SortKey key = sortKeys.remove(id);
+    if (key != null) {
+      byTime.remove(key);
+    }
+    String path = paths.remove(id);
+    if (path != null) {
+      byPath.remove(path);
+    }
+    String author = authors.remove(id);
+    if (author != null) {
+      // Authors are dropped once they have no comments left, so the map stays bounded.
+      commentsByAuthor.computeIfPresent(author, (name, count) -> count == 1 ? null : count - 1);
+    }
+  }
+
+  private Comment read(int offset) {
+    ByteBuffer record = log.duplicate();
+    record.position(offset + HEADER_SIZE);
+    int end = offset + HEADER_SIZE + log.getInt(offset);
+    Comment.Builder comment = Comment.builder()
+        .setfirstName(readString(record))
+        .setLastName(readString(record))
+        .setCommentText(readString(record))
+        .setDate(readString(record));
+    String id = readString(record);
+    long timestamp = record.getLong();
+    // Records written before replies existed end at the timestamp.
+    String path = record.position() < end ? readString(record) : Comment.pathSegment(timestamp, id);
+    return comment.setId(id).setTimestamp(timestamp).setPath(path).build();
+  }
+
+  private String readDeletedId(int offset) {
+    ByteBuffer record = log.duplicate();
+    record.position(offset + HEADER_SIZE);
+    return readString(record);
+  }
+
+  private static String readString(ByteBuffer record) {
+    byte[] bytes = new byte[record.getInt()];
+    record.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] utf8(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String encodeCursor(SortKey key) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(utf8(key.timestamp + ":" + key.id));
+  }
+
+  private static String encodePathCursor(String path) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(utf8(path));
+  }
+
+  /** @throws IllegalArgumentException if the cursor is not valid Base64 */
+  private static String decodePathCursor(String cursor) {
+    return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+  }
+
+  /** @throws IllegalArgumentException if the cursor was not made by {@code encodeCursor} */
+  private static SortKey decodeCursor(String cursor) {
+    String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    int separator = decoded.indexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+    return new SortKey(
+        Long.parseLong(decoded.substring(0, separator)), decoded.substring(separator + 1));
+  }
+}
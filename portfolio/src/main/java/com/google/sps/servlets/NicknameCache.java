@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded, least recently used cache of nicknames keyed by user ID. Users without a nickname are
+ * cached with an empty one, so they do not cost a query on every page load either.
+ *
+ * <p>Nicknames set through this instance are written through. Entries expire after
+ * {@code maxAgeMillis}, which bounds how long a nickname set on another instance goes unnoticed.
+ */
+final class NicknameCache {
+
+  private static final class Entry {
+    final String nickname;
+    final long createdMillis;
+
+    Entry(String nickname, long createdMillis) {
+      this.nickname = nickname;
+      this.createdMillis = createdMillis;
+    }
+  }
+
+  private final long maxAgeMillis;
+  private final Map<String, Entry> entries;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  NicknameCache(int capacity, long maxAgeMillis) {
+    this.maxAgeMillis = maxAgeMillis;
+    this.entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, /* accessOrder= */ true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /** Returns the cached nickname of {@code userId} if it is still fresh. */
+  synchronized Optional<String> get(String userId) {
+    Entry entry = entries.get(userId);
+    if (entry != null && System.currentTimeMillis() - entry.createdMillis > maxAgeMillis) {
+      entries.remove(userId);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    return Optional.of(entry.nickname);
+  }
+
+  /**
+   * Caches a nickname read from Datastore after a miss. A nickname written through meanwhile is
+   * newer than what was read, so it is kept.
+   */
+  synchronized void putLoaded(String userId, String nickname) {
+    entries.putIfAbsent(userId, new Entry(nickname, System.currentTimeMillis()));
+  }
+
+  /** Caches a nickname the user just set. */
+  synchronized void put(String userId, String nickname) {
+    entries.put(userId, new Entry(nickname, System.currentTimeMillis()));
+  }
+
+  /** Returns hit, miss and eviction counts along with the current size. */
+  synchronized Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    stats.put("evictions", evictions);
+    stats.put("size", (long) entries.size());
+    return stats;
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.LifecycleManager;
+import com.google.appengine.api.ThreadManager;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/** Starts and stops the background work of this instance. */
+@WebListener
+public class PortfolioContextListener implements ServletContextListener {
+
+  private static final Logger logger = Logger.getLogger(PortfolioContextListener.class.getName());
+
+  private ScheduledExecutorService scheduler;
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    // Reading every comment into the search index would hold up the first request, so it happens
+    // on a background thread where the scaling allows one, and otherwise a page at a time during
+    // searches.
+    try {
+      ThreadManager.createBackgroundThread(CommentSearchServlet::rebuildIndex).start();
+    } catch (RuntimeException e) {
+      logger.info("No background thread for the search index; searches will rebuild it");
+    }
+
+    DataServlet.WRITE_BUFFER.ifPresent(buffer -> {
+      // Background threads are only available on instances with basic or manual scaling, which
+      // is what write-behind mode needs so that quiet periods still get flushed.
+      long delay = Long.getLong("comments.writeBehind.maxDelayMillis", 1_000L);
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+      scheduler.scheduleWithFixedDelay(buffer::flushIfOverdue, delay, delay, TimeUnit.MILLISECONDS);
+      LifecycleManager.getInstance().setShutdownHook(new LifecycleManager.ShutdownHook() {
+        @Override
+        public void shutdown() {
+          buffer.flush();
+        }
+      });
+    });
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+    DataServlet.WRITE_BUFFER.ifPresent(CommentWriteBuffer::flush);
+  }
+}
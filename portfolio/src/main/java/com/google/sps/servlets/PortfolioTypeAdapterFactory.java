@@ -0,0 +1,30 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.TypeAdapterFactory;
+import com.ryanharter.auto.value.gson.GsonTypeAdapterFactory;
+
+/**
+ * Gson TypeAdapters generated at compile time for every AutoValue class with a static
+ * {@code typeAdapter(Gson)} method, so those classes are serialized without reflection.
+ */
+@GsonTypeAdapterFactory
+abstract class PortfolioTypeAdapterFactory implements TypeAdapterFactory {
+
+  static TypeAdapterFactory create() {
+    return new AutoValueGson_PortfolioTypeAdapterFactory();
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.Optional;
+import javax.servlet.annotation.WebServlet;
+
+/**
+ * Task that deletes every comment, one batch delete call per task, and counts the deleted
+ * comments down.
+ */
+@WebServlet(PurgeCommentsServlet.URL)
+public class PurgeCommentsServlet extends BatchTaskServlet {
+  static final String URL = "/tasks/purge-comments";
+  static final String JOB_TYPE = "purge-comments";
+
+  /** Largest number of keys Datastore accepts in a single delete call. */
+  private static final int BATCH_SIZE = 500;
+
+  private final DatastoreCommentRepository repository = new DatastoreCommentRepository(
+      DatastoreServiceFactory.getDatastoreService(), Optional.empty(), jobs,
+      CommentCountServlet.COUNTERS, LoginServlet.USERS);
+
+  @Override
+  protected Query query() {
+    // Whole entities, since the counts are kept by author.
+    return new Query("Comment");
+  }
+
+  @Override
+  protected int batchSize() {
+    return BATCH_SIZE;
+  }
+
+  @Override
+  protected int process(QueryResultList<Entity> batch) {
+    repository.purge(batch);
+    DataServlet.CACHE.invalidate();
+    return batch.size();
+  }
+}
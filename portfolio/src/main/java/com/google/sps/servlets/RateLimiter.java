@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets that limit how often each client may do something. A bucket holds up to
+ * {@code capacity} tokens and earns one back every {@code refillMillis}; each admitted request
+ * spends one.
+ *
+ * <p>A bucket is a single {@code AtomicLong} holding the time at which it will be full again, so
+ * admitting a request is one compare-and-set and never takes a lock. A bucket whose time has
+ * passed is full, which is also the state of a bucket that does not exist yet, so such buckets
+ * are evicted without losing anything once {@code maxKeys} clients are tracked. If every tracked
+ * client is still active, new clients share one overflow bucket until room frees up.
+ */
+final class RateLimiter {
+
+  private final long capacity;
+  private final long refillNanos;
+  private final int maxKeys;
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong overflow = new AtomicLong(System.nanoTime());
+  private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+  private final AtomicLong overflowed = new AtomicLong();
+
+  RateLimiter(long capacity, long refillMillis, int maxKeys) {
+    this.capacity = capacity;
+    this.refillNanos = refillMillis * 1_000_000L;
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * Spends a token of the bucket of {@code key}. Returns 0 if the request is admitted, or else
+   * how many nanoseconds to wait before the bucket has a token again.
+   */
+  long tryAcquire(String key) {
+    long now = System.nanoTime();
+    AtomicLong bucket = bucketFor(key, now);
+    while (true) {
+      long fullAt = bucket.get();
+      long next = Math.max(fullAt, now) + refillNanos;
+      long wait = next - now - capacity * refillNanos;
+      if (wait > 0) {
+        rejected.incrementAndGet();
+        return wait;
+      }
+      if (bucket.compareAndSet(fullAt, next)) {
+        admitted.incrementAndGet();
+        return 0;
+      }
+    }
+  }
+
+  private AtomicLong bucketFor(String key, long now) {
+    AtomicLong bucket = buckets.get(key);
+    if (bucket != null) {
+      return bucket;
+    }
+    if (buckets.size() >= maxKeys) {
+      evictFull(now);
+      if (buckets.size() >= maxKeys) {
+        overflowed.incrementAndGet();
+        return overflow;
+      }
+    }
+    return buckets.computeIfAbsent(key, unused -> new AtomicLong(now));
+  }
+
+  /**
+   * Drops the buckets that are full. Sweeps run at most once per refill interval, since no bucket
+   * can become full sooner, so clients that keep changing keys cannot make every request scan.
+   */
+  private void evictFull(long now) {
+    long lastSweep = lastSweepNanos.get();
+    if (now - lastSweep < refillNanos || !lastSweepNanos.compareAndSet(lastSweep, now)) {
+      return;
+    }
+    // A request racing with its bucket's removal may go uncounted, which only errs on the side of
+    // admitting it.
+    buckets.values().removeIf(bucket -> {
+      boolean full = bucket.get() <= now;
+      if (full) {
+        evicted.incrementAndGet();
+      }
+      return full;
+    });
+  }
+
+  /**
+   * Returns the number of tracked clients, the requests admitted and rejected, the buckets
+   * evicted, and the requests that fell back to the overflow bucket.
+   */
+  Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("keys", (long) buckets.size());
+    stats.put("admitted", admitted.get());
+    stats.put("rejected", rejected.get());
+    stats.put("evicted", evicted.get());
+    stats.put("overflowed", overflowed.get());
+    return stats;
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+
+/**
+ * One-shot migration task that re-keys comments stored under an auto-allocated id so that their
+ * UUID becomes the key name. Each batch writes the copies with one put call before deleting the
+ * originals with one delete call, so a retried batch only rewrites the same keys.
+ */
+@WebServlet(RekeyCommentsServlet.URL)
+public class RekeyCommentsServlet extends BatchTaskServlet {
+  static final String URL = "/tasks/rekey-comments";
+  static final String JOB_TYPE = "rekey-comments";
+
+  /** Largest number of entities Datastore accepts in a single put or delete call. */
+  private static final int BATCH_SIZE = 500;
+
+  @Override
+  protected Query query() {
+    return new Query("Comment");
+  }
+
+  @Override
+  protected int batchSize() {
+    return BATCH_SIZE;
+  }
+
+  @Override
+  protected int process(QueryResultList<Entity> batch) {
+    List<Entity> copies = new ArrayList<>();
+    List<Key> originals = new ArrayList<>();
+    for (Entity entity : batch) {
+      String id = (String) entity.getProperty("id");
+      // Comments that already use their UUID as key name are left alone.
+      if (entity.getKey().getName() != null || id == null) {
+        continue;
+      }
+      Entity copy = new Entity(Comment.key(id));
+      copy.setPropertiesFrom(entity);
+      copies.add(copy);
+      originals.add(entity.getKey());
+    }
+    if (copies.isEmpty()) {
+      return 0;
+    }
+
+    datastore.put(copies);
+    datastore.delete(originals);
+    DataServlet.CACHE.invalidate();
+    return copies.size();
+  }
+}
@@ -0,0 +1,186 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Keeps a response in an HMAC-signed cookie that expires, so that a later request can get it back
+ * without calling any service. The token is {@code expiry.payload.signature}, with the payload and
+ * signature in unpadded base64url.
+ *
+ * <p>The signature also covers a hash of the App Engine login cookie, so a token stops verifying
+ * as soon as its user logs out or logs in as someone else. Requests without a login cookie never
+ * get a token.
+ */
+final class SessionTokens {
+
+  /** Cookies App Engine keeps the login session in, in production and on the dev server. */
+  private static final List<String> LOGIN_COOKIES =
+      Arrays.asList("SACSID", "ACSID", "dev_appserver_login");
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final String cookieName;
+  private final String cookiePath;
+  private final long maxAgeMillis;
+  private final ThreadLocal<Mac> macs;
+  private final AtomicLong issued = new AtomicLong();
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * @param secret key the tokens are signed with. Instances that do not share it reject each
+   *     other's tokens, which only costs the caller a fresh lookup.
+   */
+  SessionTokens(String cookieName, String cookiePath, byte[] secret, long maxAgeMillis) {
+    this.cookieName = cookieName;
+    this.cookiePath = cookiePath;
+    this.maxAgeMillis = maxAgeMillis;
+    SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+    this.macs = ThreadLocal.withInitial(() -> {
+      try {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(ALGORITHM + " is not available", e);
+      }
+    });
+  }
+
+  /** Returns the payload of the request's token if it is signed, fresh and for this login. */
+  Optional<String> read(HttpServletRequest request) {
+    Optional<String> token = cookie(request, cookieName);
+    Optional<byte[]> login = loginHash(request);
+    if (!token.isPresent() || !login.isPresent()) {
+      return Optional.empty();
+    }
+
+    String[] parts = token.get().split("\\.", -1);
+    try {
+      if (parts.length != 3) {
+        rejected.incrementAndGet();
+        return Optional.empty();
+      }
+      long expiry = Long.parseLong(parts[0]);
+      byte[] payload = DECODER.decode(parts[1]);
+      if (expiry < System.currentTimeMillis() || !MessageDigest.isEqual(
+          sign(expiry, payload, login.get()), DECODER.decode(parts[2]))) {
+        rejected.incrementAndGet();
+        return Optional.empty();
+      }
+      accepted.incrementAndGet();
+      return Optional.of(new String(payload, StandardCharsets.UTF_8));
+    } catch (IllegalArgumentException e) {
+      // Thrown for an expiry that is not a number or parts that are not base64.
+      rejected.incrementAndGet();
+      return Optional.empty();
+    }
+  }
+
+  /** Sets a token holding {@code payload}, replacing any earlier one. */
+  void write(HttpServletRequest request, HttpServletResponse response, String payload) {
+    Optional<byte[]> login = loginHash(request);
+    if (!login.isPresent()) {
+      return;
+    }
+    long expiry = System.currentTimeMillis() + maxAgeMillis;
+    byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+    String token = expiry + "." + ENCODER.encodeToString(bytes) + "."
+        + ENCODER.encodeToString(sign(expiry, bytes, login.get()));
+    response.addCookie(cookie(request, token, (int) (maxAgeMillis / 1_000)));
+    issued.incrementAndGet();
+  }
+
+  /** Removes the token, if the client has one. */
+  void clear(HttpServletRequest request, HttpServletResponse response) {
+    if (cookie(request, cookieName).isPresent()) {
+      response.addCookie(cookie(request, "", 0));
+    }
+  }
+
+  /** Returns how many tokens were issued, accepted and rejected as forged, stale or foreign. */
+  Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("issued", issued.get());
+    stats.put("accepted", accepted.get());
+    stats.put("rejected", rejected.get());
+    return stats;
+  }
+
+  private byte[] sign(long expiry, byte[] payload, byte[] login) {
+    Mac mac = macs.get();
+    mac.update((expiry + ".").getBytes(StandardCharsets.UTF_8));
+    mac.update(login);
+    return mac.doFinal(payload);
+  }
+
+  private Cookie cookie(HttpServletRequest request, String value, int maxAgeSeconds) {
+    Cookie cookie = new Cookie(cookieName, value);
+    cookie.setPath(cookiePath);
+    cookie.setMaxAge(maxAgeSeconds);
+    cookie.setHttpOnly(true);
+    cookie.setSecure(request.isSecure());
+    return cookie;
+  }
+
+  /** Returns a hash of the request's login cookies, or empty if it has none. */
+  private static Optional<byte[]> loginHash(HttpServletRequest request) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    boolean found = false;
+    for (String name : LOGIN_COOKIES) {
+      Optional<String> value = cookie(request, name);
+      if (value.isPresent()) {
+        digest.update((name + "=" + value.get() + ";").getBytes(StandardCharsets.UTF_8));
+        found = true;
+      }
+    }
+    return found ? Optional.of(digest.digest()) : Optional.empty();
+  }
+
+  private static Optional<String> cookie(HttpServletRequest request, String name) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies == null) {
+      return Optional.empty();
+    }
+    return Arrays.stream(cookies)
+        .filter(cookie -> cookie.getName().equals(name))
+        .map(Cookie::getValue)
+        .findFirst();
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Named counters, each split over a fixed number of shard entities. An increment only touches
+ * one random shard, so concurrent writers rarely contend for the same entity group, and a read
+ * sums the shards with one batch get: its cost depends on the number of shards, never on what
+ * was counted.
+ *
+ * <p>Sums are cached for {@code maxAgeMillis}. Increments made through this instance update the
+ * cached sum once their transaction commits; increments on other instances show up when it
+ * expires.
+ */
+final class ShardedCounter {
+
+  private static final String KIND = "CounterShard";
+
+  private static final class Sum {
+    long value;
+    final long loadedMillis;
+
+    Sum(long value, long loadedMillis) {
+      this.value = value;
+      this.loadedMillis = loadedMillis;
+    }
+  }
+
+  private final DatastoreService datastore;
+  private final int shards;
+  private final long maxAgeMillis;
+  private final Map<String, Sum> sums;
+  private long hits;
+  private long misses;
+
+  ShardedCounter(DatastoreService datastore, int shards, int capacity, long maxAgeMillis) {
+    this.datastore = datastore;
+    this.shards = shards;
+    this.maxAgeMillis = maxAgeMillis;
+    this.sums = new LinkedHashMap<String, Sum>(capacity, 0.75f, /* accessOrder= */ true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Sum> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Adds {@code delta} to a random shard of counter {@code name} as part of {@code txn}. Call
+   * {@link #applied} once the transaction has committed.
+   */
+  void increment(Transaction txn, String name, long delta) {
+    Key key = shardKey(name, ThreadLocalRandom.current().nextInt(shards));
+    Entity shard;
+    try {
+      shard = datastore.get(txn, key);
+    } catch (EntityNotFoundException e) {
+      shard = new Entity(key);
+      shard.setUnindexedProperty("count", 0L);
+    }
+    shard.setUnindexedProperty("count", (Long) shard.getProperty("count") + delta);
+    datastore.put(txn, shard);
+  }
+
+  /** Adds a committed increment to the cached sum, so this instance reads its own writes. */
+  synchronized void applied(String name, long delta) {
+    Sum sum = sums.get(name);
+    if (sum != null) {
+      sum.value += delta;
+    }
+  }
+
+  /** Returns the value of counter {@code name}, which is 0 if it was never incremented. */
+  long get(String name) {
+    synchronized (this) {
+      Sum sum = sums.get(name);
+      if (sum != null && System.currentTimeMillis() - sum.loadedMillis <= maxAgeMillis) {
+        hits++;
+        return sum.value;
+      }
+      misses++;
+    }
+
+    List<Key> keys = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; shard++) {
+      keys.add(shardKey(name, shard));
+    }
+    long value = 0;
+    for (Entity shard : datastore.get(keys).values()) {
+      value += (Long) shard.getProperty("count");
+    }
+    synchronized (this) {
+      sums.put(name, new Sum(value, System.currentTimeMillis()));
+    }
+    return value;
+  }
+
+  /** Returns the number of cached sums and how often reads were served from them. */
+  synchronized Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("shards", (long) shards);
+    stats.put("cachedSums", (long) sums.size());
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    return stats;
+  }
+
+  private static Key shardKey(String name, int shard) {
+    return KeyFactory.createKey(KIND, name + "#" + shard);
+  }
+}
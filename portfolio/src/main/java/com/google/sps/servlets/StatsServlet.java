@@ -0,0 +1,46 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that reports the counters of this instance's in-memory components. */
+@WebServlet("/stats")
+public class StatsServlet extends HttpServlet {
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("commentPageCache", DataServlet.CACHE.stats());
+    stats.put("commentSearchIndex", CommentSearchServlet.INDEX.stats());
+    stats.put("commentFeed", CommentFeedServlet.FEED.stats());
+    stats.put("commentCounters", CommentCountServlet.COUNTERS.stats());
+    stats.put("compression", GzipFilter.stats());
+    stats.put("commentRateLimiter", DataServlet.WRITE_LIMITER.stats());
+    stats.put("nicknameCache", LoginServlet.NICKNAMES.stats());
+    LoginServlet.TOKENS.ifPresent(tokens -> stats.put("loginTokens", tokens.stats()));
+    DataServlet.WRITE_BUFFER.ifPresent(buffer -> stats.put("commentWriteBuffer", buffer.stats()));
+
+    String json = Json.GSON.toJson(stats);
+    response.setContentType("application/json;");
+    response.getWriter().println(json);
+  }
+}
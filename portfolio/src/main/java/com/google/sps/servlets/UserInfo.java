@@ -15,18 +15,23 @@
 package com.google.sps.servlets;
 
 import com.google.appengine.api.users.User;
+import com.google.auto.value.AutoValue;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 
 /** Encapsulate User info and logout url. */
-public final class UserInfo {
-  private final String email;
-  private final String nickname;
-  private final String userId;
-  private final String logOutUrl;
+@AutoValue
+public abstract class UserInfo {
+  abstract String email();
+  abstract String nickname();
+  abstract String userId();
+  abstract String logOutUrl();
 
-  UserInfo(User user, String nickname, String logOutUrl) {
-    this.email = user.getEmail();
-    this.nickname = nickname;
-    this.userId = user.getUserId();
-    this.logOutUrl = logOutUrl;
+  static UserInfo create(User user, String nickname, String logOutUrl) {
+    return new AutoValue_UserInfo(user.getEmail(), nickname, user.getUserId(), logOutUrl);
+  }
+
+  static TypeAdapter<UserInfo> typeAdapter(Gson gson) {
+    return new AutoValue_UserInfo.GsonTypeAdapter(gson);
   }
 }
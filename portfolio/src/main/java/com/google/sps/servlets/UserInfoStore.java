@@ -0,0 +1,176 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Nicknames of users, stored as {@code UserInfo} entities keyed by user ID so that they are read
+ * with gets rather than queries. Reads go through a {@link NicknameCache} first.
+ */
+final class UserInfoStore {
+
+  private static final String KIND = "UserInfo";
+
+  /** Times a transaction is tried before a conflict with other writers is given up on. */
+  private static final int TRANSACTION_ATTEMPTS = 3;
+
+  private final DatastoreService datastore;
+  private final NicknameCache cache;
+
+  UserInfoStore(DatastoreService datastore, NicknameCache cache) {
+    this.datastore = datastore;
+    this.cache = cache;
+  }
+
+  /** Returns the Datastore key of the user with the given id. */
+  static Key key(String userId) {
+    return KeyFactory.createKey(KIND, userId);
+  }
+
+  /** Returns the nickname of the user with the given id, or "" if they have not set one. */
+  String nickname(String userId) {
+    Optional<String> cached = cache.get(userId);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    String nickname = find(userId).map(UserInfoStore::nicknameOf).orElse("");
+    cache.putLoaded(userId, nickname);
+    return nickname;
+  }
+
+  /**
+   * Returns the nicknames of the users with the given ids, "" for those without one. Users that
+   * are not cached are read with a single batch get.
+   */
+  Map<String, String> nicknames(Collection<String> userIds) {
+    Map<String, String> nicknames = new HashMap<>();
+    List<Key> missing = new ArrayList<>();
+    for (String userId : userIds) {
+      Optional<String> cached = cache.get(userId);
+      if (cached.isPresent()) {
+        nicknames.put(userId, cached.get());
+      } else if (!nicknames.containsKey(userId)) {
+        nicknames.put(userId, "");
+        missing.add(key(userId));
+      }
+    }
+    if (missing.isEmpty()) {
+      return nicknames;
+    }
+
+    // Users only stored under an allocated id are left at "" here rather than costing a query
+    // each; their next visit to /login moves them to their key.
+    Map<Key, Entity> found = datastore.get(missing);
+    for (Key key : missing) {
+      Entity entity = found.get(key);
+      String nickname = entity == null ? "" : nicknameOf(entity);
+      nicknames.put(key.getName(), nickname);
+      cache.putLoaded(key.getName(), nickname);
+    }
+    return nicknames;
+  }
+
+  /** Sets the nickname of the user with the given id, creating their entity if needed. */
+  void setNickname(String userId, String nickname) {
+    inTransaction(txn -> {
+      Entity entity = get(txn, userId).orElseGet(() -> {
+        Entity created = new Entity(key(userId));
+        created.setProperty("id", userId);
+        return created;
+      });
+      entity.setProperty("nickname", nickname);
+      datastore.put(txn, entity);
+      return entity;
+    });
+    cache.put(userId, nickname);
+  }
+
+  /**
+   * Returns the entity of the user with the given id. Users are looked up by key; the property
+   * query only runs for users whose nickname was stored under an allocated id, and moves them to
+   * their key so that it does not run again.
+   */
+  private Optional<Entity> find(String userId) {
+    try {
+      return Optional.of(datastore.get(key(userId)));
+    } catch (EntityNotFoundException e) {
+      Query query =
+          new Query(KIND).setFilter(new FilterPredicate("id", FilterOperator.EQUAL, userId));
+      List<Entity> legacy = datastore.prepare(query).asList(FetchOptions.Builder.withLimit(1));
+      if (legacy.isEmpty()) {
+        return Optional.empty();
+      }
+      // A nickname set while the query ran is newer, so the copy does not replace it.
+      Entity moved = inTransaction(txn -> get(txn, userId).orElseGet(() -> {
+        Entity copy = new Entity(key(userId));
+        copy.setPropertiesFrom(legacy.get(0));
+        datastore.put(txn, copy);
+        return copy;
+      }));
+      datastore.delete(legacy.get(0).getKey());
+      return Optional.of(moved);
+    }
+  }
+
+  private Optional<Entity> get(Transaction txn, String userId) {
+    try {
+      return Optional.of(datastore.get(txn, key(userId)));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** Runs {@code work} in a transaction, tried again if it conflicts with another writer. */
+  private <T> T inTransaction(Function<Transaction, T> work) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction();
+      try {
+        T result = work.apply(txn);
+        txn.commit();
+        return result;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  private static String nicknameOf(Entity entity) {
+    return Optional.ofNullable((String) entity.getProperty("nickname")).orElse("");
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Task that writes one comment the write-behind buffer could not. The comment travels as JSON in
+ * the parameters of the task, so it survives the instance and every deploy that can still read
+ * the fields. The comment is counted in the transaction that writes it, and a failed write answers
+ * with an error, which makes the task queue try again later with backoff.
+ */
+@WebServlet(WriteCommentServlet.URL)
+public class WriteCommentServlet extends HttpServlet {
+  static final String URL = "/tasks/write-comment";
+
+  /** Most tasks the task queue accepts in a single add call. */
+  private static final int MAX_TASKS_PER_ADD = 100;
+
+  private static final Logger logger = Logger.getLogger(WriteCommentServlet.class.getName());
+
+  private final DatastoreCommentRepository repository = new DatastoreCommentRepository(
+      DatastoreServiceFactory.getDatastoreService(), Optional.empty(), new JobStore(),
+      CommentCountServlet.COUNTERS, LoginServlet.USERS);
+
+  /** Enqueues one task per entity, so an entity that cannot be written only holds up itself. */
+  static void enqueue(List<Entity> entities) {
+    Queue queue = QueueFactory.getDefaultQueue();
+    List<TaskOptions> tasks = new ArrayList<>(MAX_TASKS_PER_ADD);
+    for (Entity entity : entities) {
+      TaskOptions task =
+          withUrl(URL).param("comment", Json.toJson(Json.COMMENT, Comment.fromEntity(entity)));
+      String userId = (String) entity.getProperty("userId");
+      if (userId != null) {
+        task.param("userId", userId);
+      }
+      tasks.add(task);
+      if (tasks.size() == MAX_TASKS_PER_ADD) {
+        queue.add(tasks);
+        tasks.clear();
+      }
+    }
+    if (!tasks.isEmpty()) {
+      queue.add(tasks);
+    }
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine strips this header from external requests, so only the task queue can get past.
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    Entity entity;
+    try {
+      entity = Json.COMMENT.fromJson(request.getParameter("comment")).toEntity();
+    } catch (IOException | RuntimeException e) {
+      // Every status other than 2xx makes the queue retry, which could never succeed here.
+      logger.log(Level.SEVERE, "Dropping write-comment task "
+          + request.getHeader("X-AppEngine-TaskName") + " that holds no comment", e);
+      return;
+    }
+    String userId = request.getParameter("userId");
+    if (userId != null) {
+      entity.setUnindexedProperty("userId", userId);
+    }
+    repository.writeHandedOff(entity);
+    DataServlet.CACHE.invalidate();
+  }
+}
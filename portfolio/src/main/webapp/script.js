@@ -14,6 +14,18 @@
 
 import { MAP_STYLE, PLACES } from './constant.js';
 
+/** Number of comments fetched per request when showing all of them. */
+const COMMENT_PAGE_SIZE = 50;
+
+/** Delay between two progress checks of a background job. */
+const JOB_POLL_INTERVAL_MS = 1000;
+
+/** Time the live comment feed has to open before the page polls for comments instead. */
+const FEED_OPEN_TIMEOUT_MS = 10000;
+
+/** Delay between two fetches of the comments when the live feed cannot stream. */
+const COMMENT_POLL_INTERVAL_MS = 15000;
+
 /** 
  * Fetches a random element from an array.
  * 
@@ -52,17 +64,33 @@ function showComments() {
   document.getElementById('comments').innerHTML = '';
   document.getElementById('delete-comments').addEventListener('click', () => deleteComment('all'), false);
   document.getElementById('spinner').classList.toggle('spinner-border');
-  fetch('/data?max-comment=' + maxComment)
-    .then(response => response.json())
-    .then(comments => {
-      document.getElementById('spinner').classList.toggle('spinner-border');
-      comments.forEach(comment => {
-        renderListComments(comment);
-      });
-    })
+  const request = maxComment === 'All'
+    ? fetchAllComments(null)
+    : fetch('/data?max-comment=' + maxComment)
+        .then(response => response.json())
+        .then(comments => comments.forEach(renderListComments));
+  showCommentCount();
+  request
+    .then(() => document.getElementById('spinner').classList.toggle('spinner-border'))
     .catch(error => void console.error(error));
 }
 
+/**
+ * Renders every comment by following the server's page cursors until they run out.
+ *
+ * @param {?string} cursor cursor returned with the previous page, null for the first page
+ * @returns {Promise} resolves once the last page is rendered
+ */
+function fetchAllComments(cursor) {
+  const url = '/data?page-size=' + COMMENT_PAGE_SIZE + (cursor ? '&cursor=' + cursor : '');
+  return fetch(url)
+    .then(response => response.json())
+    .then(page => {
+      page.comments.forEach(renderListComments);
+      return page.cursor ? fetchAllComments(page.cursor) : undefined;
+    });
+}
+
 /** Resets session storage value and shows that number of comments. */
 function refreshComments() {
   const maxComment = document.getElementById('max-comment').value;
@@ -71,25 +99,94 @@ function refreshComments() {
   showComments();
 }
 
+/** Shows how many comments there are, which the server counts without loading them. */
+function showCommentCount() {
+  fetch('/data/count')
+    .then(response => response.json())
+    .then(({count}) => {
+      document.getElementById('comment-count').innerText = count + ' comments';
+    })
+    .catch(error => void console.error(error));
+}
+
 /** 
- * Creates an <li> element containing text.
+ * Appends a comment to the list.
  * 
+ * @param {object} comment comment returned by the server
+ */
+function renderListComments(comment) {
+  document.getElementById('comments').appendChild(createCommentElement(comment));
+}
+
+/**
+ * Subscribes to new comments pushed by the server and shows them on top of the list, instead of
+ * re-fetching the whole list. Servers that buffer whole responses, like the App Engine standard
+ * environment, never open the feed, so the page polls for comments instead.
+ */
+function listenForNewComments() {
+  const feed = new EventSource('/comments/live');
+  const fallback = setTimeout(() => {
+    feed.close();
+    setTimeout(pollComments, COMMENT_POLL_INTERVAL_MS);
+  }, FEED_OPEN_TIMEOUT_MS);
+  feed.addEventListener('open', () => clearTimeout(fallback));
+  feed.addEventListener('comment', event => {
+    const comments = document.getElementById('comments');
+    comments.insertBefore(createCommentElement(JSON.parse(event.data)), comments.firstChild);
+    showCommentCount();
+    // Keep the number of comments the user asked for.
+    const maxComment = Number(sessionStorage.getItem('max-comment') || 1);
+    if (!Number.isNaN(maxComment)) {
+      while (comments.children.length > maxComment) {
+        comments.removeChild(comments.lastChild);
+      }
+    }
+  });
+}
+
+/** Replaces the shown comments with the latest ones, and then does so again after a delay. */
+function pollComments() {
+  const maxComment = sessionStorage.getItem('max-comment') || 1;
+  let request;
+  if (maxComment === 'All') {
+    document.getElementById('comments').innerHTML = '';
+    request = fetchAllComments(null);
+  } else {
+    request = fetch('/data?max-comment=' + maxComment)
+      .then(response => response.json())
+      .then(comments => {
+        document.getElementById('comments').innerHTML = '';
+        comments.forEach(renderListComments);
+      });
+  }
+  showCommentCount();
+  request
+    .catch(error => void console.error(error))
+    .then(() => setTimeout(pollComments, COMMENT_POLL_INTERVAL_MS));
+}
+
+/**
+ * Creates the list item of a comment.
+ *
  * @param {string} firstName First Name of the commenter
  * @param {string} lastName Last Name of the commenter
+ * @param {string} nickname current nickname of the commenter's account, empty if none
  * @param {string} commentText comment made by the commenter
  * @param {string} date date when the comment was made
  * @param {string} id unique id of the specific comment
+ * @returns {DocumentFragment}
  */
-function renderListComments({firstName, lastName, commentText, date, id}) {
+function createCommentElement({firstName, lastName, nickname, commentText, date, id}) {
   const template = document.getElementById('item-template');
   const content = template.content.cloneNode(true);
 
   content.querySelector('.first-name').innerText = firstName;
   content.querySelector('.last-name').innerText = lastName;
+  content.querySelector('.nickname').innerText = nickname ? '(' + nickname + ')' : '';
   content.querySelector('.comment-text').innerText = commentText;
   content.querySelector('.date').innerText = date;
   content.querySelector('.close').addEventListener('click', () => deleteComment(id), false);
-  document.getElementById('comments').appendChild(content);
+  return content;
 }
 
 function createMap() {
@@ -185,16 +282,34 @@ function deleteComment(id) {
   }
   if (window.confirm(deleteMessage)) {
     fetch('/data?id=' + id,{method: 'DELETE'})
+      // Deleting all comments runs as a background job; wait for it before refreshing.
+      .then(response => response.status === 202 ? response.json().then(waitForJob) : undefined)
       // Call showComments function for the server to be in sync with the lost data.
       .then(showComments)
       .catch(error => void console.error(error));
   }
 }
 
+/**
+ * Polls a background job until it is done.
+ *
+ * @param {object} job job status returned by the server
+ * @returns {Promise} resolves once the job is done
+ */
+function waitForJob(job) {
+  if (job.state === 'done') {
+    return Promise.resolve();
+  }
+  return new Promise(resolve => setTimeout(resolve, JOB_POLL_INTERVAL_MS))
+    .then(() => fetch('/jobs?id=' + job.id))
+    .then(response => response.json())
+    .then(waitForJob);
+}
 
 function populateDom() {
   login();
   showComments();
+  listenForNewComments();
   addRandomQuote();
   createMap();
 }
@@ -0,0 +1,159 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CommentSearchIndexTest {
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private CommentSearchIndex index;
+
+  @Before
+  public void setUp() {
+    index = new CommentSearchIndex();
+  }
+
+  @Test
+  public void tokenizeSplitsOnPunctuationAndLowerCases() {
+    Assert.assertEquals(Arrays.asList("hello", "world", "42", "café"),
+        CommentSearchIndex.tokenize("Hello, World-42 Café!"));
+    Assert.assertEquals(Collections.emptyList(), CommentSearchIndex.tokenize(null));
+  }
+
+  @Test
+  public void rarerTokenRanksHigher() {
+    index.add(TestComments.comment("a", 1, "apple banana"));
+    index.add(TestComments.comment("b", 2, "apple"));
+    index.add(TestComments.comment("c", 3, "banana cherry"));
+    index.add(TestComments.comment("d", 4, "banana"));
+
+    // "cherry" is in one comment and "apple" in two, so the cherry match outscores either apple.
+    Assert.assertEquals(
+        Arrays.asList("c", "b", "a"), TestComments.ids(index.search("apple cherry", 10)));
+  }
+
+  @Test
+  public void repeatedTokenRanksHigher() {
+    index.add(TestComments.comment("a", 1, "kiwi kiwi kiwi"));
+    index.add(TestComments.comment("b", 2, "kiwi"));
+    index.add(TestComments.comment("c", 3, "lime"));
+
+    Assert.assertEquals(Arrays.asList("a", "b"), TestComments.ids(index.search("kiwi", 10)));
+  }
+
+  @Test
+  public void equalScoresListNewestFirst() {
+    index.add(TestComments.comment("a", 1, "plum"));
+    index.add(TestComments.comment("b", 3, "plum"));
+    index.add(TestComments.comment("c", 2, "plum"));
+
+    Assert.assertEquals(Arrays.asList("b", "c", "a"), TestComments.ids(index.search("plum", 10)));
+  }
+
+  @Test
+  public void keepsOnlyBestMatchesUpToLimit() {
+    for (int i = 0; i < 20; i++) {
+      index.add(TestComments.comment("plain" + i, i, "fig"));
+    }
+    index.add(TestComments.comment("best", 0, "fig fig"));
+
+    List<String> found = TestComments.ids(index.search("FIG", 3));
+
+    Assert.assertEquals(Arrays.asList("best", "plain19", "plain18"), found);
+  }
+
+  @Test
+  public void namesAreSearchedToo() {
+    index.add(TestComments.comment("a", 1, "nothing to see"));
+
+    Assert.assertEquals(Arrays.asList("a"), TestComments.ids(index.search("lovelace", 10)));
+    Assert.assertEquals(Collections.emptyList(), TestComments.ids(index.search("babbage", 10)));
+  }
+
+  @Test
+  public void addingAgainReplacesEarlierVersion() {
+    index.add(TestComments.comment("a", 1, "grape"));
+    index.add(TestComments.comment("a", 1, "melon"));
+
+    Assert.assertEquals(Collections.emptyList(), TestComments.ids(index.search("grape", 10)));
+    Assert.assertEquals(Arrays.asList("a"), TestComments.ids(index.search("melon", 10)));
+    Assert.assertEquals(1L, (long) index.stats().get("comments"));
+  }
+
+  @Test
+  public void removedCommentIsNotFound() {
+    index.add(TestComments.comment("a", 1, "pear"));
+    index.add(TestComments.comment("b", 2, "pear"));
+
+    index.remove("a");
+
+    Assert.assertEquals(Arrays.asList("b"), TestComments.ids(index.search("pear", 10)));
+  }
+
+  @Test
+  public void rebuildReadsEveryPage() throws IOException {
+    try (MappedLogCommentRepository repository =
+        new MappedLogCommentRepository(folder.newFolder().toPath().resolve("comments.log"))) {
+      for (int i = 0; i < 5; i++) {
+        repository.save(TestComments.comment("c" + i, i, "date"), Optional.empty());
+      }
+      Assert.assertFalse(index.isReady());
+
+      Assert.assertTrue(index.rebuild(repository, 2, 60_000));
+
+      Assert.assertEquals(5, index.search("date", 10).size());
+    }
+  }
+
+  @Test
+  public void rebuildKeepsNewerVersionsAndRemovals() throws IOException {
+    try (MappedLogCommentRepository repository =
+        new MappedLogCommentRepository(folder.newFolder().toPath().resolve("comments.log"))) {
+      repository.save(TestComments.comment("a", 1, "lemon"), Optional.empty());
+      repository.save(TestComments.comment("b", 2, "lemon"), Optional.empty());
+      index.add(TestComments.comment("a", 1, "orange"));
+      index.remove("b");
+
+      Assert.assertTrue(index.rebuild(repository, 10, 60_000));
+
+      Assert.assertEquals(Collections.emptyList(), TestComments.ids(index.search("lemon", 10)));
+      Assert.assertEquals(Arrays.asList("a"), TestComments.ids(index.search("orange", 10)));
+    }
+  }
+
+  @Test
+  public void clearedIndexIsReady() {
+    index.add(TestComments.comment("a", 1, "quince"));
+
+    index.clear();
+
+    Assert.assertTrue(index.isReady());
+    Assert.assertEquals(Collections.emptyList(), TestComments.ids(index.search("quince", 10)));
+  }
+}
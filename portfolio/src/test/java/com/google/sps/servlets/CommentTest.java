@@ -0,0 +1,91 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CommentTest {
+  private static final String ROOT_ID = "4d1b0e0e-6d3c-4e57-9a0f-1d5e5c3b2a10";
+  private static final String REPLY_ID = "9b2f7c4a-3e1d-4b6a-8c5e-2f0a1b3c4d5e";
+  private static final String NESTED_REPLY_ID = "0c8e6a2b-7d4f-4e1a-b3c5-6d7e8f9a0b1c";
+
+  private static final long ROOT_TIME = 1_590_000_000_000L;
+
+  @Test
+  public void pathSegmentPadsTimestamp() {
+    Assert.assertEquals("0000000000042" + ROOT_ID, Comment.pathSegment(42, ROOT_ID));
+    Assert.assertEquals("1590000000000" + ROOT_ID, Comment.pathSegment(ROOT_TIME, ROOT_ID));
+  }
+
+  @Test
+  public void pathSegmentsSortByTime() {
+    // Without the padding, 999 would sort after 1000.
+    Assert.assertTrue(
+        Comment.pathSegment(999, REPLY_ID).compareTo(Comment.pathSegment(1000, ROOT_ID)) < 0);
+  }
+
+  @Test
+  public void topLevelComment() {
+    Comment root = TestComments.comment(ROOT_ID, ROOT_TIME, "Hello");
+
+    Assert.assertEquals(0, root.depth());
+    Assert.assertEquals(Optional.empty(), root.parentId());
+  }
+
+  @Test
+  public void replyPathEndsWithReplySegment() {
+    Comment root = TestComments.comment(ROOT_ID, ROOT_TIME, "Hello");
+
+    String replyPath = root.replyPath(ROOT_TIME + 1, REPLY_ID);
+
+    Assert.assertEquals(
+        root.path() + "/" + Comment.pathSegment(ROOT_TIME + 1, REPLY_ID), replyPath);
+    Assert.assertTrue(replyPath.compareTo(root.path() + "0") < 0);
+  }
+
+  @Test
+  public void repliesKnowTheirDepthAndParent() {
+    Comment root = TestComments.comment(ROOT_ID, ROOT_TIME, "Hello");
+    Comment reply = TestComments.reply(root, REPLY_ID, ROOT_TIME + 1, "Hello");
+    Comment nestedReply = TestComments.reply(reply, NESTED_REPLY_ID, ROOT_TIME + 2, "Hello");
+
+    Assert.assertEquals(1, reply.depth());
+    Assert.assertEquals(Optional.of(ROOT_ID), reply.parentId());
+    Assert.assertEquals(2, nestedReply.depth());
+    Assert.assertEquals(Optional.of(REPLY_ID), nestedReply.parentId());
+    Assert.assertEquals(2, Comment.depth(nestedReply.path()));
+  }
+
+  @Test
+  public void authorIsTrimmedName() {
+    Comment anonymous = Comment.builder()
+        .setfirstName("")
+        .setLastName("Lovelace")
+        .setCommentText("Hello")
+        .setDate("")
+        .setTimestamp(ROOT_TIME)
+        .setId(ROOT_ID)
+        .setPath(Comment.pathSegment(ROOT_TIME, ROOT_ID))
+        .build();
+
+    Assert.assertEquals("Lovelace", anonymous.author());
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.User;
+import com.google.gson.Gson;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks that the generated adapters write the same JSON as the reflective {@code new Gson()} the
+ * servlets used before, so clients see the same field names and shape.
+ */
+@RunWith(JUnit4.class)
+public final class JsonTest {
+  private static final Gson REFLECTIVE_GSON = new Gson();
+
+  @Test
+  public void commentMatchesReflectiveOutput() {
+    // HTML characters are escaped the same way too.
+    Comment comment = TestComments.comment("a", 1_590_000_000_000L, "<b>Hi</b> & 'bye'");
+
+    Assert.assertEquals(REFLECTIVE_GSON.toJson(comment), Json.toJson(Json.COMMENT, comment));
+    Assert.assertEquals(REFLECTIVE_GSON.toJson(comment), Json.GSON.toJson(comment));
+  }
+
+  @Test
+  public void commentListMatchesReflectiveOutput() {
+    List<Comment> comments = Arrays.asList(
+        TestComments.comment("a", 1, "First"), TestComments.comment("b", 2, "Second"));
+
+    Assert.assertEquals(REFLECTIVE_GSON.toJson(comments), Json.toJson(Json.COMMENTS, comments));
+  }
+
+  @Test
+  public void commentHasBaselineFieldNames() {
+    String json = Json.toJson(Json.COMMENT, TestComments.comment("a", 1, "Hi"));
+
+    for (String name : Arrays.asList("firstName", "lastName", "commentText", "date", "id")) {
+      Assert.assertTrue(json, json.contains("\"" + name + "\":"));
+    }
+  }
+
+  @Test
+  public void userInfoMatchesReflectiveOutput() {
+    UserInfo userInfo = UserInfo.create(
+        new User("ada@example.com", "example.com", "1234"), "Ada", "/_ah/logout?continue=%2F");
+
+    Assert.assertEquals(REFLECTIVE_GSON.toJson(userInfo), Json.toJson(Json.USER_INFO, userInfo));
+  }
+
+  @Test
+  public void jobStatusMatchesReflectiveOutput() {
+    // JobStatus.fromEntity needs a Datastore key, which needs an App Engine environment.
+    JobStatus status = new AutoValue_JobStatus(7, "purge-comments", JobStatus.RUNNING, 2, 1000);
+
+    Assert.assertEquals(REFLECTIVE_GSON.toJson(status), Json.toJson(Json.JOB_STATUS, status));
+  }
+
+  @Test
+  public void commentCountMatchesReflectiveOutput() {
+    CommentCount count = CommentCount.create(42);
+
+    Assert.assertEquals(REFLECTIVE_GSON.toJson(count), Json.toJson(Json.COMMENT_COUNT, count));
+  }
+}
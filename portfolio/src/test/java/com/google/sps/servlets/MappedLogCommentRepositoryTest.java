@@ -0,0 +1,197 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class MappedLogCommentRepositoryTest {
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException {
+    path = folder.newFolder().toPath().resolve("comments.log");
+  }
+
+  private static void save(CommentRepository repository, Comment... comments) {
+    for (Comment comment : comments) {
+      repository.save(comment, Optional.empty());
+    }
+  }
+
+  private static CommentRepository.Results<Comment> listAll(CommentRepository repository) {
+    return repository.list(Optional.empty(), Optional.empty(), 100, Optional.empty());
+  }
+
+  @Test
+  public void logIsReplayedWhenOpened() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      save(repository, TestComments.comment("a", 1, "First"),
+          TestComments.comment("b", 2, "Second"), TestComments.comment("c", 3, "Third"));
+      repository.delete("b");
+      save(repository, TestComments.comment("a", 1, "Edited"));
+    }
+
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      Assert.assertEquals(Arrays.asList("c", "a"), TestComments.ids(listAll(repository)));
+      Assert.assertEquals("Edited", repository.get("a").get().commentText());
+      Assert.assertEquals(Optional.empty(), repository.get("b"));
+      Assert.assertEquals(2, repository.count(Optional.empty()));
+      Assert.assertEquals(2, repository.count(Optional.of("Ada Lovelace")));
+    }
+  }
+
+  @Test
+  public void tornLastRecordIsDropped() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      save(repository, TestComments.comment("a", 1, "First"));
+    }
+    byte[] before = Files.readAllBytes(path);
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      save(repository, TestComments.comment("b", 2, "Second"));
+    }
+
+    // A crash before the length of the last record is written leaves its payload after a length
+    // of 0. The first record ends with text, so its last byte is the last one that is set.
+    int end = before.length;
+    while (before[end - 1] == 0) {
+      end--;
+    }
+    byte[] torn = Files.readAllBytes(path);
+    Arrays.fill(torn, end, end + Integer.BYTES, (byte) 0);
+    Files.write(path, torn);
+
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      Assert.assertEquals(Arrays.asList("a"), TestComments.ids(listAll(repository)));
+      Assert.assertEquals(Optional.empty(), repository.get("b"));
+
+      // New records are written over the torn one.
+      save(repository, TestComments.comment("c", 3, "Third"));
+    }
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      Assert.assertEquals(Arrays.asList("c", "a"), TestComments.ids(listAll(repository)));
+    }
+  }
+
+  @Test
+  public void listPagesThroughTopLevelCommentsNewestFirst() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      Comment a = TestComments.comment("a", 1, "First");
+      save(repository, a, TestComments.comment("b", 2, "Second"),
+          TestComments.reply(a, "reply", 3, "Reply"), TestComments.comment("c", 4, "Third"));
+
+      CommentRepository.Results<Comment> first =
+          repository.list(Optional.empty(), Optional.empty(), 2, Optional.empty());
+      Assert.assertEquals(Arrays.asList("c", "b"), TestComments.ids(first));
+      CommentRepository.Results<Comment> second = repository.list(
+          Optional.empty(), Optional.empty(), 2, Optional.of(first.cursor()));
+      Assert.assertEquals(Arrays.asList("a"), TestComments.ids(second));
+
+      CommentRepository.Results<Comment> window =
+          repository.list(Optional.of(2L), Optional.of(4L), 10, Optional.empty());
+      Assert.assertEquals(Arrays.asList("b"), TestComments.ids(window));
+    }
+  }
+
+  @Test
+  public void threadStopsAtDepth() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      Comment root = TestComments.comment("root", 1, "Root");
+      Comment first = TestComments.reply(root, "first", 2, "First");
+      Comment nested = TestComments.reply(first, "nested", 3, "Nested");
+      Comment second = TestComments.reply(root, "second", 4, "Second");
+      save(repository, root, first, nested, second, TestComments.comment("other", 5, "Other"));
+
+      Assert.assertEquals(Arrays.asList("root", "first", "nested", "second"),
+          TestComments.ids(repository.thread("root", Comment.MAX_DEPTH, 100).get()));
+      Assert.assertEquals(Arrays.asList("root", "first", "second"),
+          TestComments.ids(repository.thread("root", 1, 100).get()));
+      Assert.assertEquals(
+          Arrays.asList("root"), TestComments.ids(repository.thread("root", 0, 100).get()));
+      Assert.assertEquals(Arrays.asList("root", "first"),
+          TestComments.ids(repository.thread("root", Comment.MAX_DEPTH, 2).get()));
+      Assert.assertEquals(Optional.empty(), repository.thread("missing", 1, 100));
+    }
+  }
+
+  @Test
+  public void allPagesThroughEveryCommentInPathOrder() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      Comment a = TestComments.comment("a", 1, "First");
+      save(repository, a, TestComments.comment("b", 3, "Second"),
+          TestComments.reply(a, "reply", 2, "Reply"));
+
+      CommentRepository.Results<Comment> first = repository.all(2, Optional.empty());
+      Assert.assertEquals(Arrays.asList("a", "reply"), TestComments.ids(first));
+      CommentRepository.Results<Comment> second = repository.all(2, Optional.of(first.cursor()));
+      Assert.assertEquals(Arrays.asList("b"), TestComments.ids(second));
+    }
+  }
+
+  @Test
+  public void currentLeavesOutCommentsThatAreGone() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      save(repository, TestComments.comment("a", 1, "Edited"),
+          TestComments.comment("b", 2, "Second"));
+      repository.delete("b");
+
+      List<Comment> current = repository.current(Arrays.asList(
+          TestComments.comment("a", 1, "First"), TestComments.comment("b", 2, "Second"),
+          TestComments.comment("c", 3, "Never saved")));
+
+      Assert.assertEquals(Arrays.asList("a"), TestComments.ids(current));
+      Assert.assertEquals("Edited", current.get(0).commentText());
+    }
+  }
+
+  @Test
+  public void deleteAllEndsPagesListedBeforeIt() throws IOException {
+    try (MappedLogCommentRepository repository = new MappedLogCommentRepository(path)) {
+      save(repository, TestComments.comment("a", 1, "First"),
+          TestComments.comment("b", 2, "Second"));
+      CommentRepository.Results<Comment> page = listAll(repository);
+      Assert.assertEquals("b", page.next().id());
+
+      repository.deleteAll();
+      save(repository, TestComments.comment("c", 3, "Third"));
+
+      Assert.assertFalse(page.hasNext());
+      try {
+        page.next();
+        Assert.fail();
+      } catch (ConcurrentModificationException expected) {
+        // The offset of "a" now points into the new log.
+      }
+      Assert.assertEquals(Arrays.asList("c"), TestComments.ids(listAll(repository)));
+      Assert.assertEquals(1, repository.count(Optional.empty()));
+    }
+  }
+}
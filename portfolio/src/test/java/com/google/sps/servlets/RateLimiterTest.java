@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class RateLimiterTest {
+  private static final String CLIENT_A = "Client A";
+  private static final String CLIENT_B = "Client B";
+  private static final String CLIENT_C = "Client C";
+
+  private static final long ONE_MINUTE_MILLIS = 60_000;
+
+  @Test
+  public void admitsUpToCapacityThenRejects() {
+    RateLimiter limiter = new RateLimiter(3, ONE_MINUTE_MILLIS, 10);
+
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    long wait = limiter.tryAcquire(CLIENT_A);
+
+    Assert.assertTrue(wait > 0);
+    Assert.assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(ONE_MINUTE_MILLIS));
+    Assert.assertEquals(3L, (long) limiter.stats().get("admitted"));
+    Assert.assertEquals(1L, (long) limiter.stats().get("rejected"));
+  }
+
+  @Test
+  public void clientsHaveSeparateBuckets() {
+    RateLimiter limiter = new RateLimiter(1, ONE_MINUTE_MILLIS, 10);
+
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    Assert.assertTrue(limiter.tryAcquire(CLIENT_A) > 0);
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_B));
+    Assert.assertEquals(2L, (long) limiter.stats().get("keys"));
+  }
+
+  @Test
+  public void tokenIsEarnedBackAfterTheWait() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(1, 20, 10);
+
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    long wait = limiter.tryAcquire(CLIENT_A);
+    Assert.assertTrue(wait > 0);
+
+    // Only the one token is earned back, so the request after it has to wait again.
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    Assert.assertTrue(limiter.tryAcquire(CLIENT_A) > 0);
+  }
+
+  @Test
+  public void rejectedRequestsDoNotSpendTokens() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(1, 20, 10);
+
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    long wait = limiter.tryAcquire(CLIENT_A);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(limiter.tryAcquire(CLIENT_A) > 0);
+    }
+
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+  }
+
+  @Test
+  public void fullBucketsAreEvictedForNewClients() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(1, 20, 1);
+
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    // Client A's bucket is full again after one refill interval.
+    Thread.sleep(40);
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_B));
+
+    Assert.assertEquals(1L, (long) limiter.stats().get("keys"));
+    Assert.assertEquals(1L, (long) limiter.stats().get("evicted"));
+    Assert.assertEquals(0L, (long) limiter.stats().get("overflowed"));
+  }
+
+  @Test
+  public void newClientsShareOverflowBucketWhileEveryoneIsActive() {
+    RateLimiter limiter = new RateLimiter(1, ONE_MINUTE_MILLIS, 1);
+
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_A));
+    Assert.assertEquals(0, limiter.tryAcquire(CLIENT_B));
+    Assert.assertTrue(limiter.tryAcquire(CLIENT_C) > 0);
+
+    Assert.assertEquals(1L, (long) limiter.stats().get("keys"));
+    Assert.assertEquals(2L, (long) limiter.stats().get("overflowed"));
+  }
+}
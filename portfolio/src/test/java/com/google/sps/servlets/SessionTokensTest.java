@@ -0,0 +1,175 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class SessionTokensTest {
+  private static final String COOKIE_NAME = "session";
+  private static final String PAYLOAD = "{\"loggedIn\":true}";
+  private static final byte[] SECRET =
+      "a secret of at least 32 bytes....".getBytes(StandardCharsets.UTF_8);
+  private static final long ONE_HOUR_MILLIS = 3_600_000;
+
+  private static final Cookie LOGIN = new Cookie("dev_appserver_login", "user@example.com:false:1");
+  private static final Cookie OTHER_LOGIN =
+      new Cookie("dev_appserver_login", "other@example.com:false:2");
+
+  @Test
+  public void signedTokenIsReadBack() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+
+    Cookie token = issue(tokens, LOGIN);
+
+    Assert.assertEquals(Optional.of(PAYLOAD), tokens.read(request(LOGIN, token)));
+    Assert.assertEquals(1L, (long) tokens.stats().get("accepted"));
+  }
+
+  @Test
+  public void tamperedPayloadIsRejected() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+    String[] parts = issue(tokens, LOGIN).getValue().split("\\.");
+    String forged = Base64.getUrlEncoder().withoutPadding()
+        .encodeToString("{\"loggedIn\":false}".getBytes(StandardCharsets.UTF_8));
+
+    Cookie token = new Cookie(COOKIE_NAME, parts[0] + "." + forged + "." + parts[2]);
+
+    Assert.assertEquals(Optional.empty(), tokens.read(request(LOGIN, token)));
+    Assert.assertEquals(1L, (long) tokens.stats().get("rejected"));
+  }
+
+  @Test
+  public void extendedExpiryIsRejected() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+    String value = issue(tokens, LOGIN).getValue();
+    long expiry = Long.parseLong(value.substring(0, value.indexOf('.')));
+
+    Cookie token =
+        new Cookie(COOKIE_NAME, (expiry + ONE_HOUR_MILLIS) + value.substring(value.indexOf('.')));
+
+    Assert.assertEquals(Optional.empty(), tokens.read(request(LOGIN, token)));
+  }
+
+  @Test
+  public void malformedTokensAreRejected() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+
+    Assert.assertEquals(Optional.empty(),
+        tokens.read(request(LOGIN, new Cookie(COOKIE_NAME, "not a token"))));
+    Assert.assertEquals(Optional.empty(),
+        tokens.read(request(LOGIN, new Cookie(COOKIE_NAME, "soon.e30.!!"))));
+    Assert.assertEquals(Optional.empty(),
+        tokens.read(request(LOGIN, new Cookie(COOKIE_NAME, "1.e30.AA.AA"))));
+    Assert.assertEquals(3L, (long) tokens.stats().get("rejected"));
+  }
+
+  @Test
+  public void expiredTokenIsRejected() throws InterruptedException {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, 1);
+
+    Cookie token = issue(tokens, LOGIN);
+    Thread.sleep(10);
+
+    Assert.assertEquals(Optional.empty(), tokens.read(request(LOGIN, token)));
+    Assert.assertEquals(1L, (long) tokens.stats().get("rejected"));
+  }
+
+  @Test
+  public void tokenOfAnotherLoginIsRejected() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+
+    Cookie token = issue(tokens, LOGIN);
+
+    Assert.assertEquals(Optional.empty(), tokens.read(request(OTHER_LOGIN, token)));
+    Assert.assertEquals(Optional.empty(), tokens.read(request(token)));
+  }
+
+  @Test
+  public void tokenSignedWithAnotherSecretIsRejected() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+    SessionTokens otherTokens = new SessionTokens(
+        COOKIE_NAME, "/", "another secret of 32 bytes......".getBytes(StandardCharsets.UTF_8),
+        ONE_HOUR_MILLIS);
+
+    Cookie token = issue(otherTokens, LOGIN);
+
+    Assert.assertEquals(Optional.empty(), tokens.read(request(LOGIN, token)));
+  }
+
+  @Test
+  public void requestWithoutLoginGetsNoToken() {
+    SessionTokens tokens = new SessionTokens(COOKIE_NAME, "/", SECRET, ONE_HOUR_MILLIS);
+    List<Cookie> added = new ArrayList<>();
+
+    tokens.write(request(), response(added), PAYLOAD);
+
+    Assert.assertEquals(0, added.size());
+    Assert.assertEquals(0L, (long) tokens.stats().get("issued"));
+  }
+
+  /** Writes a token for {@code login} and returns the cookie it was set in. */
+  private static Cookie issue(SessionTokens tokens, Cookie login) {
+    List<Cookie> added = new ArrayList<>();
+    tokens.write(request(login), response(added), PAYLOAD);
+    Assert.assertEquals(1, added.size());
+    Assert.assertEquals(COOKIE_NAME, added.get(0).getName());
+    return added.get(0);
+  }
+
+  /** Returns a request that only carries {@code cookies}. */
+  private static HttpServletRequest request(Cookie... cookies) {
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        SessionTokensTest.class.getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getCookies":
+              return cookies.length == 0 ? null : cookies;
+            case "isSecure":
+              return false;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /** Returns a response that adds the cookies set on it to {@code added}. */
+  private static HttpServletResponse response(List<Cookie> added) {
+    return (HttpServletResponse) Proxy.newProxyInstance(
+        SessionTokensTest.class.getClassLoader(),
+        new Class<?>[] {HttpServletResponse.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("addCookie")) {
+            added.add((Cookie) args[0]);
+            return null;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+}
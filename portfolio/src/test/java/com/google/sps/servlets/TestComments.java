@@ -0,0 +1,57 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/** Comments the tests build and the helpers they check them with. */
+final class TestComments {
+
+  private TestComments() {}
+
+  /** Returns a top-level comment by Ada Lovelace. */
+  static Comment comment(String id, long timestamp, String text) {
+    return builder(id, timestamp, text).setPath(Comment.pathSegment(timestamp, id)).build();
+  }
+
+  /** Returns a reply to {@code parent} by Ada Lovelace. */
+  static Comment reply(Comment parent, String id, long timestamp, String text) {
+    return builder(id, timestamp, text).setPath(parent.replyPath(timestamp, id)).build();
+  }
+
+  private static Comment.Builder builder(String id, long timestamp, String text) {
+    return Comment.builder()
+        .setfirstName("Ada")
+        .setLastName("Lovelace")
+        .setCommentText(text)
+        .setDate("")
+        .setTimestamp(timestamp)
+        .setId(id);
+  }
+
+  /** Returns the ids of the comments, in order. */
+  static List<String> ids(Iterator<Comment> comments) {
+    List<String> ids = new ArrayList<>();
+    comments.forEachRemaining(comment -> ids.add(comment.id()));
+    return ids;
+  }
+
+  /** Returns the ids of the comments, in order. */
+  static List<String> ids(List<Comment> comments) {
+    return ids(comments.iterator());
+  }
+}
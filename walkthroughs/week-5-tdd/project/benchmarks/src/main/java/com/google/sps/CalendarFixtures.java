@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/** Builds reproducible calendars for the benchmarks. */
+final class CalendarFixtures {
+
+  private CalendarFixtures() {}
+
+  /** Returns the name of person {@code index} in the calendars. */
+  static String person(int index) {
+    return "Person " + index;
+  }
+
+  /**
+   * Returns {@code count} events between {@code people} people, each lasting 15 minutes to two
+   * hours and attended by one to four of them.
+   */
+  static List<Event> events(int count, int people, long seed) {
+    Random random = new Random(seed);
+    List<Event> events = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int duration = 15 * (1 + random.nextInt(8));
+      int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - duration + 1);
+      String[] attendees = new String[1 + random.nextInt(4)];
+      for (int j = 0; j < attendees.length; j++) {
+        attendees[j] = person(random.nextInt(people));
+      }
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, duration),
+          Arrays.asList(attendees)));
+    }
+    return events;
+  }
+
+  /**
+   * Returns {@code count} half-hour requests for {@code attendees} people each and one optional
+   * attendee.
+   */
+  static List<MeetingRequest> requests(int count, int attendees, int people, long seed) {
+    Random random = new Random(seed);
+    List<MeetingRequest> requests = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Collection<String> mandatory = new ArrayList<>(attendees);
+      for (int j = 0; j < attendees; j++) {
+        mandatory.add(person(random.nextInt(people)));
+      }
+      MeetingRequest request = new MeetingRequest(mandatory, 30);
+      request.addOptionalAttendee(person(random.nextInt(people)));
+      requests.add(request);
+    }
+    return requests;
+  }
+}
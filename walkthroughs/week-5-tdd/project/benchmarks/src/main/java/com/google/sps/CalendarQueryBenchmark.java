@@ -0,0 +1,90 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Meeting queries over a 30 day horizon at the end of calendars of different lengths. The cost
+ * should not grow with the number of days in the calendar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CalendarQueryBenchmark {
+  private static final int REQUESTS = 1024;
+  private static final int HORIZON_DAYS = 30;
+
+  @Param({"30", "365", "3650"})
+  int days;
+
+  @Param({"1000"})
+  int eventsPerDay;
+
+  @Param({"1000"})
+  int people;
+
+  @Param({"4"})
+  int attendees;
+
+  private CalendarIndex calendar;
+  private MeetingRequest[] requests;
+  private FindMeetingQuery query;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    LocalDate first = LocalDate.of(2020, 1, 1);
+    Map<LocalDate, List<Event>> eventsByDay = new HashMap<>();
+    for (int day = 0; day < days; day++) {
+      eventsByDay.put(first.plusDays(day), CalendarFixtures.events(eventsPerDay, people, day));
+    }
+    calendar = CalendarIndex.fromDays(eventsByDay);
+
+    EpochTimeRange horizon = EpochTimeRange.fromStartEnd(
+        EpochTimeRange.startOfDay(first.plusDays(days - HORIZON_DAYS)),
+        EpochTimeRange.startOfDay(first.plusDays(days)));
+    requests = new MeetingRequest[REQUESTS];
+    int i = 0;
+    for (MeetingRequest request : CalendarFixtures.requests(REQUESTS, attendees, people, 2)) {
+      requests[i++] = new MeetingRequest(request.getAttendees(), request.getDuration(), horizon);
+    }
+    query = new FindMeetingQuery();
+  }
+
+  @Benchmark
+  public List<EpochTimeRange> query() {
+    next = (next + 1) % REQUESTS;
+    return query.query(calendar, requests[next]);
+  }
+}
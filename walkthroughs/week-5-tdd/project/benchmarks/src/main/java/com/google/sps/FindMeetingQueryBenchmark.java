@@ -0,0 +1,74 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Meeting queries against an indexed calendar, one engine against the other. Every person has
+ * about {@code 2.5 * events / people} events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindMeetingQueryBenchmark {
+  private static final int REQUESTS = 1024;
+
+  @Param({"SWEEP", "BITMAP"})
+  FindMeetingQuery.Engine engine;
+
+  @Param({"1000", "100000"})
+  int events;
+
+  @Param({"1000"})
+  int people;
+
+  @Param({"2", "8"})
+  int attendees;
+
+  private EventIndex index;
+  private List<MeetingRequest> requests;
+  private FindMeetingQuery query;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    index = new EventIndex(CalendarFixtures.events(events, people, 1));
+    requests = CalendarFixtures.requests(REQUESTS, attendees, people, 2);
+    query = new FindMeetingQuery(engine);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> query() {
+    next = (next + 1) % REQUESTS;
+    return query.query(index, requests.get(next));
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The free time sweep on its own, into a sink that only sums what it is given. Once warmed up it
+ * should report no allocation under the GC profiler that {@link BenchmarkMain} adds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreeTimeSweepBenchmark {
+  private static final int REQUESTS = 1024;
+
+  @Param({"1000", "100000"})
+  int events;
+
+  @Param({"1000"})
+  int people;
+
+  @Param({"2", "8"})
+  int attendees;
+
+  private EventIndex index;
+  private List<List<String>> requests;
+  private FreeTimeSweep sweep;
+  private FreeTimeSweep.Sink sink;
+  private long freeMinutes;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    index = new EventIndex(CalendarFixtures.events(events, people, 1));
+    requests = new ArrayList<>(REQUESTS);
+    for (MeetingRequest request : CalendarFixtures.requests(REQUESTS, attendees, people, 2)) {
+      requests.add(new ArrayList<>(request.getAttendees()));
+    }
+    sweep = new FreeTimeSweep();
+    sink = (start, end) -> freeMinutes += end - start;
+  }
+
+  @Benchmark
+  public long findFreeTimes() {
+    next = (next + 1) % REQUESTS;
+    sweep.findFreeTimes(index, requests.get(next), 30, sink);
+    return freeMinutes;
+  }
+}
@@ -0,0 +1,152 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only index of the times each attendee is busy over any number of days. The busy times of
+ * an attendee are kept sorted by start, next to the latest end of every time up to each one. The
+ * times that fall in a window are then found with two binary searches, and the ones that started
+ * earlier but run into it are covered by that latest end, so looking up a window costs
+ * O(log n + k) for k times in it however long the calendar is.
+ */
+public final class CalendarIndex {
+
+  /** The busy times of one attendee, in order of their start. */
+  private static final class BusyTimes {
+    final long[] starts;
+    final long[] ends;
+
+    // The latest of {@code ends[0]} up to and including {@code ends[i]}.
+    final long[] latestEnds;
+
+    BusyTimes(List<EpochTimeRange> times) {
+      times.sort(EpochTimeRange.ORDER_BY_START);
+      starts = new long[times.size()];
+      ends = new long[times.size()];
+      latestEnds = new long[times.size()];
+      long latestEnd = Long.MIN_VALUE;
+      for (int i = 0; i < times.size(); i++) {
+        starts[i] = times.get(i).start();
+        ends[i] = times.get(i).end();
+        latestEnd = Math.max(latestEnd, ends[i]);
+        latestEnds[i] = latestEnd;
+      }
+    }
+
+    /**
+     * Adds the busy times within {@code window} to {@code busyTimes}, cut to fit it.
+     */
+    void addTo(List<EpochTimeRange> busyTimes, EpochTimeRange window) {
+      int first = firstStartingAtOrAfter(window.start());
+      int last = firstStartingAtOrAfter(window.end());
+      if (first > 0 && latestEnds[first - 1] > window.start()) {
+        busyTimes.add(EpochTimeRange.fromStartEnd(
+            window.start(), Math.min(latestEnds[first - 1], window.end())));
+      }
+      for (int i = first; i < last; i++) {
+        busyTimes.add(EpochTimeRange.fromStartEnd(starts[i], Math.min(ends[i], window.end())));
+      }
+    }
+
+    private int firstStartingAtOrAfter(long time) {
+      int low = 0;
+      int high = starts.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (starts[middle] < time) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+
+  private final Map<String, BusyTimes> busyTimesByAttendee = new HashMap<>();
+
+  /**
+   * Indexes the times each attendee is busy. Ranges that take no time are left out.
+   *
+   * @param busyTimesByAttendee the busy times of each attendee. Must be non-null.
+   */
+  public CalendarIndex(Map<String, ? extends Collection<EpochTimeRange>> busyTimesByAttendee) {
+    if (busyTimesByAttendee == null) {
+      throw new IllegalArgumentException("busyTimesByAttendee cannot be null. Use empty map instead.");
+    }
+
+    for (Map.Entry<String, ? extends Collection<EpochTimeRange>> entry : busyTimesByAttendee.entrySet()) {
+      List<EpochTimeRange> times = new ArrayList<>();
+      for (EpochTimeRange time : entry.getValue()) {
+        if (time.duration() > 0) {
+          times.add(time);
+        }
+      }
+      if (!times.isEmpty()) {
+        this.busyTimesByAttendee.put(entry.getKey(), new BusyTimes(times));
+      }
+    }
+  }
+
+  /**
+   * Indexes the events of each day, such as {@code Events.events} repeated for every day of a
+   * calendar.
+   *
+   * @param eventsByDay the events happening on each day. Must be non-null.
+   */
+  public static CalendarIndex fromDays(Map<LocalDate, ? extends Collection<Event>> eventsByDay) {
+    if (eventsByDay == null) {
+      throw new IllegalArgumentException("eventsByDay cannot be null. Use empty map instead.");
+    }
+
+    Map<String, List<EpochTimeRange>> busyTimesByAttendee = new HashMap<>();
+    for (Map.Entry<LocalDate, ? extends Collection<Event>> day : eventsByDay.entrySet()) {
+      for (Event event : day.getValue()) {
+        EpochTimeRange when = EpochTimeRange.onDay(day.getKey(), event.getWhen());
+        for (String attendee : event.getAttendees()) {
+          busyTimesByAttendee.computeIfAbsent(attendee, key -> new ArrayList<>()).add(when);
+        }
+      }
+    }
+    return new CalendarIndex(busyTimesByAttendee);
+  }
+
+  /**
+   * Returns the times at least one of {@code attendees} is busy within {@code window}, cut to fit
+   * it and sorted by start. Times of different attendees may overlap.
+   *
+   * @param attendees the people to look up
+   * @param window the span of time to look in
+   * @return a new start-sorted list of busy times that the caller may modify.
+   */
+  public List<EpochTimeRange> getBusyTimes(Collection<String> attendees, EpochTimeRange window) {
+    List<EpochTimeRange> busyTimes = new ArrayList<>();
+    for (String attendee : attendees) {
+      BusyTimes times = busyTimesByAttendee.get(attendee);
+      if (times != null) {
+        times.addTo(busyTimes, window);
+      }
+    }
+    busyTimes.sort(EpochTimeRange.ORDER_BY_START);
+    return busyTimes;
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only index from each attendee to the times they are busy, sorted by start. It is built once
+ * per snapshot of the events, so a query only looks at the events of the people it asks about
+ * instead of every event on the calendar.
+ *
+ * <p>Times are kept {@linkplain #pack packed} into one {@code long} each rather than as
+ * {@code TimeRange}s, so that they can be read without following a reference per event.
+ */
+public final class EventIndex {
+  private static final long[] NO_TIMES = new long[0];
+
+  // Packed busy times per attendee, sorted by start and then by end.
+  private final Map<String, long[]> busyTimesByAttendee;
+
+  // The same busy times as a {@link MinuteBitmap} per attendee, 23 words each.
+  private final Map<String, long[]> busyMinutesByAttendee;
+
+  // Starts of the events that take up no minute of the day, kept only for the few attendees that
+  // have any. They still end the free time before them.
+  private final Map<String, long[]> emptyEventStartsByAttendee = new HashMap<>();
+
+  private final int eventCount;
+
+  /**
+   * Indexes a snapshot of events. Later changes to {@code events} are not seen by the index.
+   *
+   * @param events the events to index. Must be non-null.
+   */
+  public EventIndex(Collection<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null. Use empty collection instead.");
+    }
+
+    Map<String, List<TimeRange>> lists = new HashMap<>();
+    for (Event event : events) {
+      for (String attendee : event.getAttendees()) {
+        lists.computeIfAbsent(attendee, key -> new ArrayList<>()).add(event.getWhen());
+      }
+    }
+
+    // Arrays take a fraction of the memory of the lists once there are many people to keep.
+    busyTimesByAttendee = new HashMap<>(lists.size() * 4 / 3 + 1);
+    busyMinutesByAttendee = new HashMap<>(lists.size() * 4 / 3 + 1);
+    for (Map.Entry<String, List<TimeRange>> entry : lists.entrySet()) {
+      long[] times = new long[entry.getValue().size()];
+      for (int i = 0; i < times.length; i++) {
+        TimeRange time = entry.getValue().get(i);
+        times[i] = pack(time.start(), time.end());
+      }
+      Arrays.sort(times);
+      busyTimesByAttendee.put(entry.getKey(), times);
+      busyMinutesByAttendee.put(entry.getKey(), toBusyMinutes(entry.getKey(), times));
+    }
+    eventCount = events.size();
+  }
+
+  /**
+   * Returns whether the index was built from no events at all.
+   */
+  public boolean isEmpty() {
+    return eventCount == 0;
+  }
+
+  /**
+   * Returns a read-only, start-sorted list of the times {@code attendee} is busy.
+   *
+   * @param attendee the person to look up
+   * @return the busy times of the person, or an empty list if they have no events.
+   */
+  public List<TimeRange> getBusyTimes(String attendee) {
+    return Collections.unmodifiableList(
+        toTimeRanges(busyTimesByAttendee.getOrDefault(attendee, NO_TIMES)));
+  }
+
+  /**
+   * Returns the {@linkplain #pack packed} times {@code attendee} is busy, sorted. The array belongs
+   * to the index and must not be modified.
+   *
+   * @param attendee the person to look up
+   * @return the packed busy times of the person, or an empty array if they have no events.
+   */
+  long[] getPackedBusyTimes(String attendee) {
+    return busyTimesByAttendee.getOrDefault(attendee, NO_TIMES);
+  }
+
+  /**
+   * ORs the minutes at least one of {@code attendees} is busy into {@code busyMinutes}, and the
+   * starts of their events that take up no minute of the day into {@code emptyEventStarts}. Both
+   * are {@link MinuteBitmap}s.
+   *
+   * @param attendees the people to look up
+   * @param busyMinutes bitmap of the minutes that are taken
+   * @param emptyEventStarts bitmap of the minutes that empty events start at
+   */
+  void addBusyMinutes(
+      Collection<String> attendees, long[] busyMinutes, long[] emptyEventStarts) {
+    for (String attendee : attendees) {
+      long[] minutes = busyMinutesByAttendee.get(attendee);
+      if (minutes != null) {
+        MinuteBitmap.or(busyMinutes, minutes);
+      }
+      long[] starts = emptyEventStartsByAttendee.get(attendee);
+      if (starts != null) {
+        MinuteBitmap.or(emptyEventStarts, starts);
+      }
+    }
+  }
+
+  /**
+   * Packs a range into one {@code long}, the start in the high half and the end in the low half.
+   * Packed ranges sort by start, and ranges with the same start and end are equal.
+   */
+  static long pack(int start, int end) {
+    return ((long) start << 32) | (end & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the start of a {@linkplain #pack packed} range.
+   */
+  static int start(long packed) {
+    return (int) (packed >> 32);
+  }
+
+  /**
+   * Returns the end of a {@linkplain #pack packed} range.
+   */
+  static int end(long packed) {
+    return (int) packed;
+  }
+
+  private static List<TimeRange> toTimeRanges(long[] times) {
+    List<TimeRange> ranges = new ArrayList<>(times.length);
+    for (long time : times) {
+      ranges.add(TimeRange.fromStartEnd(start(time), end(time), false));
+    }
+    return ranges;
+  }
+
+  private long[] toBusyMinutes(String attendee, long[] times) {
+    long[] minutes = new long[MinuteBitmap.WORDS];
+    for (long time : times) {
+      int start = Math.max(start(time), 0);
+      int end = Math.min(end(time), MinuteBitmap.MINUTES);
+      if (start < end) {
+        MinuteBitmap.set(minutes, start, end);
+      } else if (start(time) >= 0 && start(time) <= MinuteBitmap.MINUTES) {
+        MinuteBitmap.set(emptyEventStartsByAttendee.computeIfAbsent(
+            attendee, key -> new long[MinuteBitmap.WORDS]), start(time), start(time) + 1);
+      }
+    }
+    return minutes;
+  }
+}
@@ -18,15 +18,62 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Finds a suitable time for a meeting to happen between the mandatory
  * and optional attendees.
  */
 public final class FindMeetingQuery {
+
+  /**
+   * How the free times of the attendees are worked out. Both give the same answer for events
+   * that lie within the day.
+   */
+  public enum Engine {
+    /** Merges the sorted busy times of the attendees and walks the gaps between them. */
+    SWEEP,
+
+    /**
+     * ORs together a bitmap of the busy minutes of each attendee and scans it for free runs a word
+     * at a time. Requests for less than a minute use the sweep, which also reports the empty gaps
+     * between back-to-back events.
+     */
+    BITMAP
+  }
+
+  // Number of requests a task of {@code queryAll} evaluates itself rather than splitting further.
+  private static final int REQUESTS_PER_TASK = 8;
+
+  // Sweeps keep their buffers between calls but cannot be shared, so a call takes one out while it
+  // runs. There are never more than the most calls that ran at once, and they go away with the
+  // query instead of staying behind on the threads that used them.
+  private final Queue<FreeTimeSweep> sweeps = new ConcurrentLinkedQueue<>();
+
+  private final Engine engine;
+
+  /**
+   * Creates a query that uses the {@link Engine#SWEEP} engine.
+   */
+  public FindMeetingQuery() {
+    this(Engine.SWEEP);
+  }
+
+  /**
+   * Creates a query that uses the given engine.
+   *
+   * @param engine how free times are worked out. Must be non-null.
+   */
+  public FindMeetingQuery(Engine engine) {
+    if (engine == null) {
+      throw new IllegalArgumentException("engine cannot be null");
+    }
+    this.engine = engine;
+  }
   
   /**
    * Finds the time that is the most workable time slot for the meetings.
@@ -36,6 +83,19 @@ public final class FindMeetingQuery {
    * @return collection of time when the meeting can be scheduled.
    */
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(new EventIndex(events), request);
+  }
+
+  /**
+   * Finds the time that is the most workable time slot for the meetings, looking only at the
+   * events of the requested attendees. Build the index once and reuse it for every request made
+   * against the same events.
+   *
+   * @param events  index of the events happening that day
+   * @param request meeting that needs to be scheduled for the attendees
+   * @return collection of time when the meeting can be scheduled.
+   */
+  public Collection<TimeRange> query(EventIndex events, MeetingRequest request) {
     
     long meetingDuration = request.getDuration();
 
@@ -49,12 +109,12 @@ public final class FindMeetingQuery {
     if (events.isEmpty()) return Arrays.asList(TimeRange.WHOLE_DAY);
 
 
-    ArrayList<TimeRange> workableTimesForMandatoryAttendees = findWorkableTimes(findConflictingTimes(events, request, true), meetingDuration);
+    ArrayList<TimeRange> workableTimesForMandatoryAttendees = findWorkableTimes(events, request.getAttendees(), meetingDuration);
 
     // If there are no optional attendees, then provide time for mandatory attendees.
     if (request.getOptionalAttendees().isEmpty()) return workableTimesForMandatoryAttendees;
 
-    ArrayList<TimeRange> workableTimesForOptionalAttendees = findWorkableTimes(findConflictingTimes(events, request, false), meetingDuration);
+    ArrayList<TimeRange> workableTimesForOptionalAttendees = findWorkableTimes(events, request.getOptionalAttendees(), meetingDuration);
 
     // If there are no mandatory attendees, then provide time for optional attendees.
     if (request.getAttendees().isEmpty()) return workableTimesForOptionalAttendees;
@@ -83,7 +143,7 @@ public final class FindMeetingQuery {
       } else if (workableForMandatoryAttendees.contains(workableForOptionalAttendees)) {
         workableForBoth.add(workableForOptionalAttendees);
         optionalPointer++;
-      } else if (workableForOptionalAttendees.overlaps(workableForMandatoryAttendees)) {
+      } else {
         
         // If allowable time range overlaps then find if meeting can happen during that time.
         int mandatoryWorkableTimeStart = workableForMandatoryAttendees.start();
@@ -92,6 +152,11 @@ public final class FindMeetingQuery {
           workableForBoth.add(workableForMandatoryAttendees);
           mandatoryPointer++;
           optionalPointer++;
+        } else if (workableForMandatoryAttendees.end() < workableForOptionalAttendees.end()) {
+          // Otherwise move past whichever time ends first, or the loop would never finish.
+          mandatoryPointer++;
+        } else {
+          optionalPointer++;
         }
       }
     }
@@ -103,57 +168,164 @@ public final class FindMeetingQuery {
   }
 
   /**
-   * Finds the conflicting time between attendees events and meeting duration.
+   * Finds the times within the horizon of the request when every attendee, including the optional
+   * ones, is free for the whole meeting. If there are none, only the mandatory attendees are
+   * considered. Meetings may run past midnight, and only the busy times within the horizon are
+   * looked at.
    *
-   * @param events  collection of events happening that day
-   * @param request meeting that needs to be scheduled for the attendees
-   * @param mandatory determines if the meeting request involves mandatory attendees.
+   * @param calendar index of the events of every day
+   * @param request meeting that needs to be scheduled for the attendees, with a horizon
+   * @return collection of time when the meeting can be scheduled, in order.
+   */
+  public List<EpochTimeRange> query(CalendarIndex calendar, MeetingRequest request) {
+    EpochTimeRange horizon = request.getHorizon().orElseThrow(
+        () -> new IllegalArgumentException("request needs a horizon to search over days"));
+    long meetingDuration = request.getDuration();
+
+    // No meeting can happen outside the horizon.
+    if (meetingDuration > horizon.duration()) return Collections.emptyList();
+
+    List<String> everyone = new ArrayList<>(request.getAttendees());
+    everyone.addAll(request.getOptionalAttendees());
+    List<EpochTimeRange> workableForEveryone = findWorkableTimes(calendar.getBusyTimes(everyone, horizon), horizon, meetingDuration);
+
+    // If optional attendees could not attend, then provide time for mandatory attendees only.
+    if (!workableForEveryone.isEmpty() || request.getAttendees().isEmpty()) return workableForEveryone;
+    return findWorkableTimes(calendar.getBusyTimes(request.getAttendees(), horizon), horizon, meetingDuration);
+  }
+
+  /**
+   * Finds the most workable time slots for each of many meetings, evaluating them in parallel. A
+   * query can be shared between threads, so every request is evaluated with this one.
    *
-   * @return collection of time when the meeting can not be scheduled.
+   * @param events  index of the events happening that day
+   * @param requests meetings that need to be scheduled
+   * @param pool runs the evaluation
+   * @return the times each meeting can be scheduled, in the order of {@code requests}.
    */
-  private List<TimeRange> findConflictingTimes(Collection<Event> events, MeetingRequest request, boolean mandatory) {
-    
-    List<TimeRange> conflictTimes = new ArrayList<>();
-    for (Event event: events) {
-      Set<String> attendeesForThisEvent = event.getAttendees();
-      if (mandatory) {
-        if (!Collections.disjoint(attendeesForThisEvent, request.getAttendees())) {
-          conflictTimes.add(event.getWhen());
-        }
-      } else {
-        if (!Collections.disjoint(attendeesForThisEvent, request.getOptionalAttendees())) {
-          conflictTimes.add(event.getWhen());
+  public List<Collection<TimeRange>> queryAll(EventIndex events, List<MeetingRequest> requests, ForkJoinPool pool) {
+    // Tasks only set their own positions, and joining them publishes what they set.
+    List<Collection<TimeRange>> answers = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    pool.invoke(new QueryTask(events, requests, answers, 0, requests.size()));
+    return answers;
+  }
+
+  /**
+   * Evaluates the requests from {@code from} up to but not including {@code to}, splitting them in
+   * half until there are few enough to do in one go.
+   */
+  private final class QueryTask extends RecursiveAction {
+    private final EventIndex events;
+    private final List<MeetingRequest> requests;
+    private final List<Collection<TimeRange>> answers;
+    private final int from;
+    private final int to;
+
+    QueryTask(EventIndex events, List<MeetingRequest> requests, List<Collection<TimeRange>> answers, int from, int to) {
+      this.events = events;
+      this.requests = requests;
+      this.answers = answers;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= REQUESTS_PER_TASK) {
+        for (int i = from; i < to; i++) {
+          answers.set(i, query(events, requests.get(i)));
         }
+        return;
       }
+      int middle = (from + to) >>> 1;
+      invokeAll(new QueryTask(events, requests, answers, from, middle),
+          new QueryTask(events, requests, answers, middle, to));
     }
-    return conflictTimes;
   }
 
   /**
-   * Finds the workable time between attendees events and meeting duration.
+   * Finds the workable time within the horizon between busy times.
    *
-   * @param conflictTimes  collection of time range conflicting with the meeting
+   * @param conflictTimes  busy times within the horizon, sorted by start
+   * @param horizon  span of time to search in
+   * @param meetingDuration length of the meeting in minutes
    *
    * @return collection of time when the meeting can be scheduled.
    */
-  private ArrayList<TimeRange> findWorkableTimes(List<TimeRange> conflictTimes, long meetingDuration) {
-    ArrayList<TimeRange> workableTimes = new ArrayList<>();    
-    Collections.sort(conflictTimes, TimeRange.ORDER_BY_START);
-    int workableTimeStart = TimeRange.START_OF_DAY;
-    int workableTimeEnd = 0;
-    int previousLargeConflictEnd = 0;
-    for (TimeRange conflictTime : conflictTimes) {
-      workableTimeEnd = conflictTime.start();
-      if (meetingDuration <= workableTimeEnd - workableTimeStart) {
-        workableTimes.add(TimeRange.fromStartEnd(workableTimeStart, workableTimeEnd, false));
+  private List<EpochTimeRange> findWorkableTimes(List<EpochTimeRange> conflictTimes, EpochTimeRange horizon, long meetingDuration) {
+    List<EpochTimeRange> workableTimes = new ArrayList<>();
+    long workableTimeStart = horizon.start();
+    for (EpochTimeRange conflictTime : conflictTimes) {
+      long workableTimeEnd = conflictTime.start();
+      if (workableTimeStart < workableTimeEnd && meetingDuration <= workableTimeEnd - workableTimeStart) {
+        workableTimes.add(EpochTimeRange.fromStartEnd(workableTimeStart, workableTimeEnd));
       }
-      if (previousLargeConflictEnd < conflictTime.end()) {
-        previousLargeConflictEnd = conflictTime.end();
-      }
-      workableTimeStart = previousLargeConflictEnd > conflictTime.end() ? previousLargeConflictEnd : conflictTime.end();
+      workableTimeStart = Math.max(workableTimeStart, conflictTime.end());
+    }
+    if (workableTimeStart < horizon.end() && meetingDuration <= horizon.end() - workableTimeStart) {
+      workableTimes.add(EpochTimeRange.fromStartEnd(workableTimeStart, horizon.end()));
     }
-    if (TimeRange.END_OF_DAY - workableTimeStart >= meetingDuration) {
-      workableTimes.add(TimeRange.fromStartEnd(workableTimeStart, TimeRange.END_OF_DAY, true));
+    return workableTimes;
+  }
+
+  /**
+   * Finds the workable time of the attendees with the engine of this query.
+   *
+   * @param events  index of the events happening that day
+   * @param attendees people who need to attend the meeting
+   * @param meetingDuration length of the meeting in minutes
+   *
+   * @return collection of time when the meeting can be scheduled.
+   */
+  private ArrayList<TimeRange> findWorkableTimes(EventIndex events, Collection<String> attendees, long meetingDuration) {
+    if (engine == Engine.BITMAP && meetingDuration > 0) {
+      long[] busyMinutes = new long[MinuteBitmap.WORDS];
+      long[] emptyEventStarts = new long[MinuteBitmap.WORDS];
+      events.addBusyMinutes(attendees, busyMinutes, emptyEventStarts);
+      return findWorkableTimes(busyMinutes, emptyEventStarts, meetingDuration);
+    }
+    // The sweep itself allocates nothing once its buffers have grown, but the answer still takes a
+    // list and a TimeRange for every free time.
+    ArrayList<TimeRange> workableTimes = new ArrayList<>();
+    FreeTimeSweep sweep = sweeps.poll();
+    if (sweep == null) {
+      sweep = new FreeTimeSweep();
+    }
+    try {
+      sweep.findFreeTimes(events, attendees, meetingDuration,
+          (start, end) -> workableTimes.add(TimeRange.fromStartEnd(start, end, false)));
+    } finally {
+      sweeps.offer(sweep);
+    }
+    return workableTimes;
+  }
+
+  /**
+   * Finds the workable time in bitmaps of the busy minutes of the attendees. Free time runs from a
+   * clear bit up to the next busy minute or the next start of an empty event, the same places the
+   * sweep stops at.
+   *
+   * @param busyMinutes  bitmap of the minutes the attendees are busy
+   * @param emptyEventStarts  bitmap of the minutes that empty events start at
+   * @param meetingDuration length of the meeting in minutes, at least one
+   *
+   * @return collection of time when the meeting can be scheduled.
+   */
+  private ArrayList<TimeRange> findWorkableTimes(long[] busyMinutes, long[] emptyEventStarts, long meetingDuration) {
+    ArrayList<TimeRange> workableTimes = new ArrayList<>();
+    int workableTimeStart = MinuteBitmap.nextClearBit(busyMinutes, TimeRange.START_OF_DAY);
+    while (workableTimeStart < MinuteBitmap.MINUTES) {
+      int nextBusyMinute = Math.min(MinuteBitmap.nextSetBit(busyMinutes, workableTimeStart), MinuteBitmap.MINUTES);
+      int nextEmptyEvent = MinuteBitmap.nextSetBit(emptyEventStarts, workableTimeStart + 1);
+      int workableTimeEnd = Math.min(nextBusyMinute, nextEmptyEvent);
+
+      // Like the sweep, free time that reaches the end of the day is measured to END_OF_DAY.
+      boolean endsDay = workableTimeEnd == MinuteBitmap.MINUTES && nextEmptyEvent != MinuteBitmap.MINUTES;
+      long length = (endsDay ? TimeRange.END_OF_DAY : workableTimeEnd) - workableTimeStart;
+      if (meetingDuration <= length) {
+        workableTimes.add(TimeRange.fromStartEnd(workableTimeStart, workableTimeEnd, false));
+      }
+      workableTimeStart = MinuteBitmap.nextClearBit(busyMinutes, workableTimeEnd);
     }
     return workableTimes;
   }
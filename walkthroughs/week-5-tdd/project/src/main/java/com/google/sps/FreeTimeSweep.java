@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Finds the free times of a group of attendees by sweeping over their busy times, working only on
+ * primitive buffers that are kept from one call to the next. Once the buffers have grown to the
+ * largest group asked about, the sweep allocates nothing itself; whatever the sink keeps of the
+ * free times is up to the caller.
+ *
+ * <p>A sweep is not safe to use from more than one thread at a time.
+ */
+public final class FreeTimeSweep {
+
+  /**
+   * Receives free times as they are found, in order of their start.
+   */
+  public interface Sink {
+    /**
+     * Accepts the free time from {@code start} up to but not including {@code end}, in minutes.
+     */
+    void accept(int start, int end);
+  }
+
+  // Packed busy times of the attendees, and the buffer they are merged into.
+  private long[] times = new long[64];
+  private long[] merged = new long[64];
+
+  // Offsets in {@code times} where each sorted run of busy times starts, then where the last ends.
+  private int[] runs = new int[8];
+
+  /**
+   * Passes the times that all of {@code attendees} are free for at least {@code meetingDuration}
+   * minutes to {@code sink}. Gives the same times as the sweep that {@link FindMeetingQuery} has
+   * always done over a sorted list of {@code TimeRange}s.
+   *
+   * @param events  index of the events happening that day
+   * @param attendees people who need to attend the meeting
+   * @param meetingDuration length of the meeting in minutes
+   * @param sink receives the free times
+   */
+  public void findFreeTimes(
+      EventIndex events, Collection<String> attendees, long meetingDuration, Sink sink) {
+    int count = mergeBusyTimes(events, attendees);
+
+    int workableTimeStart = TimeRange.START_OF_DAY;
+    int previousLargeConflictEnd = 0;
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      long time = times[i];
+      if (i > 0 && time == previous) {
+        // The same time twice, such as an event shared by two attendees, changes nothing.
+        continue;
+      }
+      previous = time;
+      int conflictStart = EventIndex.start(time);
+      int conflictEnd = EventIndex.end(time);
+      if (meetingDuration <= conflictStart - workableTimeStart) {
+        sink.accept(workableTimeStart, conflictStart);
+      }
+      if (previousLargeConflictEnd < conflictEnd) {
+        previousLargeConflictEnd = conflictEnd;
+      }
+      workableTimeStart = previousLargeConflictEnd;
+    }
+    if (TimeRange.END_OF_DAY - workableTimeStart >= meetingDuration) {
+      sink.accept(workableTimeStart, TimeRange.END_OF_DAY + 1);
+    }
+  }
+
+  /**
+   * Merges the busy times of the attendees into the start of {@code times}.
+   *
+   * @return the number of busy times.
+   */
+  private int mergeBusyTimes(EventIndex events, Collection<String> attendees) {
+    int runCount = copyBusyTimes(events, attendees);
+    int count = runs[runCount];
+    if (runCount > 1 && merged.length < count) {
+      merged = new long[times.length];
+    }
+
+    // Neighbouring runs are merged into the other buffer and the buffers swapped, until one run
+    // is left.
+    while (runCount > 1) {
+      int mergedRuns = 0;
+      for (int run = 0; run < runCount; run += 2) {
+        int from = runs[run];
+        int middle = runs[Math.min(run + 1, runCount)];
+        int to = runs[Math.min(run + 2, runCount)];
+        merge(times, from, middle, to, merged);
+        runs[mergedRuns++] = from;
+      }
+      runs[mergedRuns] = count;
+      runCount = mergedRuns;
+
+      long[] swap = times;
+      times = merged;
+      merged = swap;
+    }
+    return count;
+  }
+
+  /**
+   * Copies the busy times of the attendees into {@code times}, one sorted run per attendee. This is
+   * kept apart from the merging so that it stays small enough for the iterator to be optimized
+   * away.
+   *
+   * @return the number of runs, whose offsets are in {@code runs}.
+   */
+  private int copyBusyTimes(EventIndex events, Collection<String> attendees) {
+    int count = 0;
+    int runCount = 0;
+    for (String attendee : attendees) {
+      long[] attendeeTimes = events.getPackedBusyTimes(attendee);
+      if (attendeeTimes.length == 0) {
+        continue;
+      }
+      if (times.length < count + attendeeTimes.length) {
+        times = Arrays.copyOf(times, Math.max(times.length * 2, count + attendeeTimes.length));
+      }
+      if (runs.length < runCount + 2) {
+        runs = Arrays.copyOf(runs, runs.length * 2);
+      }
+      System.arraycopy(attendeeTimes, 0, times, count, attendeeTimes.length);
+      runs[runCount++] = count;
+      count += attendeeTimes.length;
+    }
+    runs[runCount] = count;
+    return runCount;
+  }
+
+  /**
+   * Merges the sorted ranges {@code [from, middle)} and {@code [middle, to)} of {@code source} into
+   * the same positions of {@code target}.
+   */
+  private static void merge(long[] source, int from, int middle, int to, long[] target) {
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < middle && source[left] <= source[right])) {
+        target[i] = source[left++];
+      } else {
+        target[i] = source[right++];
+      }
+    }
+  }
+}
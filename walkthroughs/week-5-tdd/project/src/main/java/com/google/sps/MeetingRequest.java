@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Optional;
 
 public final class MeetingRequest {
 
@@ -39,9 +40,21 @@ public final class MeetingRequest {
   // The duration of the meeting in minutes.
   private final long duration;
 
+  // The span of time to search for a meeting in, when searching over more than one day.
+  private final EpochTimeRange horizon;
+
   public MeetingRequest(Collection<String> attendees, long duration) {
+    this(attendees, duration, null);
+  }
+
+  /**
+   * Creates a request for a meeting that has to happen within {@code horizon}, which may span
+   * many days.
+   */
+  public MeetingRequest(Collection<String> attendees, long duration, EpochTimeRange horizon) {
     this.duration = duration;
     this.attendees.addAll(attendees);
+    this.horizon = horizon;
   }
 
   /**
@@ -73,4 +86,12 @@ public final class MeetingRequest {
   public long getDuration() {
     return duration;
   }
+
+  /**
+   * Returns the span of time to search for a meeting in, or nothing if the meeting is searched
+   * for within a single day.
+   */
+  public Optional<EpochTimeRange> getHorizon() {
+    return Optional.ofNullable(horizon);
+  }
 }
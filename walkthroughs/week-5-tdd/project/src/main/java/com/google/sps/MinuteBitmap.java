@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * Helpers for bitmaps with one bit per minute of the day, bit {@code m % 64} of word {@code m / 64}
+ * standing for minute {@code m}. There is room for one bit past the end of the day, so a bitmap
+ * can also mark things that happen right at {@code MINUTES}.
+ */
+final class MinuteBitmap {
+  /** Number of minutes in a day, and the first bit past the end of it. */
+  static final int MINUTES = TimeRange.WHOLE_DAY.duration();
+
+  /** Number of words in a bitmap. */
+  static final int WORDS = (MINUTES + 64) / 64;
+
+  private MinuteBitmap() {
+    // Disallow instances.
+  }
+
+  /**
+   * Sets the bits of the minutes from {@code from} up to but not including {@code to}.
+   */
+  static void set(long[] bits, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    // Shifts only use the low six bits of the distance, which is the bit within the word.
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      bits[first] |= firstMask & lastMask;
+      return;
+    }
+    bits[first] |= firstMask;
+    for (int i = first + 1; i < last; i++) {
+      bits[i] = -1L;
+    }
+    bits[last] |= lastMask;
+  }
+
+  /**
+   * Returns the first set bit at or after {@code from}, or the number of bits if there is none.
+   */
+  static int nextSetBit(long[] bits, int from) {
+    int index = from >>> 6;
+    if (index >= bits.length) {
+      return bits.length * 64;
+    }
+    long word = bits[index] & (-1L << from);
+    while (word == 0) {
+      if (++index == bits.length) {
+        return bits.length * 64;
+      }
+      word = bits[index];
+    }
+    return index * 64 + Long.numberOfTrailingZeros(word);
+  }
+
+  /**
+   * Returns the first clear bit at or after {@code from}, or the number of bits if there is none.
+   */
+  static int nextClearBit(long[] bits, int from) {
+    int index = from >>> 6;
+    if (index >= bits.length) {
+      return bits.length * 64;
+    }
+    long word = ~bits[index] & (-1L << from);
+    while (word == 0) {
+      if (++index == bits.length) {
+        return bits.length * 64;
+      }
+      word = ~bits[index];
+    }
+    return index * 64 + Long.numberOfTrailingZeros(word);
+  }
+
+  /**
+   * ORs {@code source} into {@code target}.
+   */
+  static void or(long[] target, long[] source) {
+    for (int i = 0; i < target.length; i++) {
+      target[i] |= source[i];
+    }
+  }
+}
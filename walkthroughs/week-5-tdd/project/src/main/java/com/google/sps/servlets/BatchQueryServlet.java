@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Finds the possible times of many meetings at once. Takes a JSON array of meeting requests and
+ * answers with an array of the possible times of each, in the same order.
+ */
+@WebServlet("/query/batch")
+public class BatchQueryServlet extends HttpServlet {
+  // Most requests that one batch may hold.
+  private static final int MAX_REQUESTS = 1000;
+
+  // Batches from every request share one pool, so concurrent batches cannot start more threads
+  // than there are processors.
+  private static final ForkJoinPool POOL =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Gson gson = new Gson();
+
+    // Read the array one request at a time, so an oversized batch is refused as soon as it passes
+    // the limit instead of after all of it has been parsed.
+    List<MeetingRequest> meetingRequests = new ArrayList<>();
+    try {
+      JsonReader reader = new JsonReader(request.getReader());
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (meetingRequests.size() == MAX_REQUESTS) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+              "At most " + MAX_REQUESTS + " requests can be sent at once.");
+          return;
+        }
+        Optional<MeetingRequest> meetingRequest =
+            parse(gson, gson.fromJson(reader, JsonElement.class));
+        if (!meetingRequest.isPresent()) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+              "Every request needs an array of attendees.");
+          return;
+        }
+        if (meetingRequest.get().getHorizon().isPresent()) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+              "Multi-day horizons are not supported by /query.");
+          return;
+        }
+        meetingRequests.add(meetingRequest.get());
+      }
+      reader.endArray();
+    } catch (IOException | IllegalStateException | JsonParseException e) {
+      // JsonReader reports malformed JSON as an IOException and unexpected tokens as an
+      // IllegalStateException.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected an array of requests.");
+      return;
+    }
+
+    // Find the possible meeting times of every request against the same index.
+    List<Collection<TimeRange>> answers =
+        QueryServlet.QUERY.queryAll(QueryServlet.EVENTS, meetingRequests, POOL);
+
+    // Convert the times to JSON
+    String jsonResponse = gson.toJson(answers);
+
+    // Send the JSON back as the response
+    response.setContentType("application/json");
+    response.getWriter().println(jsonResponse);
+  }
+
+  /**
+   * Converts one element of the batch to a request. Gson does not run the field initializers of
+   * MeetingRequest, so a missing attendee list would be left null and fail inside the pool;
+   * {@code attendees} has to be an array, and a missing {@code optional_attendees} counts as none.
+   */
+  private static Optional<MeetingRequest> parse(Gson gson, JsonElement element) {
+    if (element == null || !element.isJsonObject()) {
+      return Optional.empty();
+    }
+    JsonObject object = element.getAsJsonObject();
+    JsonElement attendees = object.get("attendees");
+    if (attendees == null || !attendees.isJsonArray()) {
+      return Optional.empty();
+    }
+    JsonElement optionalAttendees = object.get("optional_attendees");
+    if (optionalAttendees == null || optionalAttendees.isJsonNull()) {
+      object.add("optional_attendees", new JsonArray());
+    } else if (!optionalAttendees.isJsonArray()) {
+      return Optional.empty();
+    }
+    return Optional.of(gson.fromJson(object, MeetingRequest.class));
+  }
+}
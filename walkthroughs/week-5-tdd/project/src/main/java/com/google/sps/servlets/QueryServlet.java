@@ -14,6 +14,7 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.EventIndex;
 import com.google.sps.Events;
 import com.google.sps.FindMeetingQuery;
 import com.google.sps.MeetingRequest;
@@ -29,6 +30,13 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/query")
 public class QueryServlet extends HttpServlet {
+  // The events never change while the server runs, so they are indexed once for every request.
+  static final EventIndex EVENTS = new EventIndex(Arrays.asList(Events.events));
+
+  // Queries only keep scratch buffers from one request to the next, so one is shared by every
+  // request, and the buffers go away with the servlet.
+  static final FindMeetingQuery QUERY = new FindMeetingQuery();
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     Gson gson = new Gson();
@@ -36,10 +44,15 @@ public class QueryServlet extends HttpServlet {
     // Convert the JSON to an instance of MeetingRequest.
     MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
 
+    // The events only cover a single day, so a horizon would be silently ignored.
+    if (meetingRequest.getHorizon().isPresent()) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Multi-day horizons are not supported by /query.");
+      return;
+    }
+
     // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+    Collection<TimeRange> answer = QUERY.query(EVENTS, meetingRequest);
 
     // Convert the times to JSON
     String jsonResponse = gson.toJson(answer);
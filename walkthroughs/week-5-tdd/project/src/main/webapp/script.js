@@ -92,10 +92,14 @@ function timeToString(totalMinutes) {
  * Request for possible meeting times.
  */
 class MeetingRequest {
-  constructor(duration, attendees, optional_attendees) {
+  constructor(duration, attendees, optional_attendees, horizon) {
     this.duration = duration;
     this.attendees = attendees;
     this.optional_attendees = optional_attendees;
+    // Optional. A {start, duration} range in minutes since the epoch to search
+    // over more than one day. /query only knows a single day of events and
+    // answers 400 when this is set.
+    this.horizon = horizon;
   }
 }
 
@@ -0,0 +1,172 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CalendarIndexTest {
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final LocalDate MONDAY = LocalDate.of(2020, 1, 6);
+  private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+  private static final LocalDate WEDNESDAY = MONDAY.plusDays(2);
+
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_60_MINUTES = 60;
+
+  private FindMeetingQuery query;
+
+  @Before
+  public void setUp() {
+    query = new FindMeetingQuery();
+  }
+
+  @Test
+  public void freeTimesRunAcrossMidnight() {
+    // A is busy all of Monday but 9:00 to 10:00 and all of Wednesday, so the longest free time is
+    // from the end of Monday to the start of Wednesday.
+    Map<LocalDate, Collection<Event>> days = new HashMap<>();
+    days.put(MONDAY, Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, false),
+            Arrays.asList(PERSON_A))));
+    days.put(WEDNESDAY, Arrays.asList(
+        new Event("Event 3", TimeRange.WHOLE_DAY, Arrays.asList(PERSON_A))));
+    CalendarIndex calendar = CalendarIndex.fromDays(days);
+    EpochTimeRange horizon = EpochTimeRange.fromStartEnd(
+        EpochTimeRange.startOfDay(MONDAY), EpochTimeRange.startOfDay(WEDNESDAY.plusDays(1)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES, horizon);
+    List<EpochTimeRange> actual = query.query(calendar, request);
+
+    List<EpochTimeRange> expected = Arrays.asList(
+        EpochTimeRange.onDay(MONDAY, TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false)),
+        EpochTimeRange.fromStartEnd(EpochTimeRange.startOfDay(MONDAY) + TimeRange.END_OF_DAY,
+            EpochTimeRange.startOfDay(WEDNESDAY)));
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void eventBeforeHorizonBlocksItsStart() {
+    // The event starts a day before the horizon and ends an hour into it.
+    long horizonStart = EpochTimeRange.startOfDay(TUESDAY);
+    Map<String, List<EpochTimeRange>> busyTimes = new HashMap<>();
+    busyTimes.put(PERSON_A, Arrays.asList(EpochTimeRange.fromStartEnd(
+        EpochTimeRange.startOfDay(MONDAY), horizonStart + DURATION_60_MINUTES)));
+    CalendarIndex calendar = new CalendarIndex(busyTimes);
+    EpochTimeRange horizon = EpochTimeRange.fromStartDuration(horizonStart, 3 * DURATION_60_MINUTES);
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES, horizon);
+    List<EpochTimeRange> actual = query.query(calendar, request);
+
+    List<EpochTimeRange> expected = Arrays.asList(
+        EpochTimeRange.fromStartEnd(horizonStart + DURATION_60_MINUTES, horizon.end()));
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void optionalAttendeeIgnoredWhenNoTimeFitsEveryone() {
+    // B is busy for the whole horizon, so only A's free time is given.
+    EpochTimeRange horizon = EpochTimeRange.fromStartDuration(
+        EpochTimeRange.startOfDay(MONDAY), 2 * EpochTimeRange.MINUTES_PER_DAY);
+    Map<String, List<EpochTimeRange>> busyTimes = new HashMap<>();
+    busyTimes.put(PERSON_B, Arrays.asList(horizon));
+    CalendarIndex calendar = new CalendarIndex(busyTimes);
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES, horizon);
+    request.addOptionalAttendee(PERSON_B);
+    List<EpochTimeRange> actual = query.query(calendar, request);
+
+    Assert.assertEquals(Arrays.asList(horizon), actual);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void requestWithoutHorizon() {
+    CalendarIndex calendar = new CalendarIndex(Collections.emptyMap());
+
+    query.query(calendar, new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES));
+  }
+
+  @Test
+  public void busyTimesMatchScanOfEveryTime() {
+    // Random calendars over a year, each looked at through random windows of up to 30 days.
+    Random random = new Random(3);
+    long yearStart = EpochTimeRange.startOfDay(LocalDate.of(2020, 1, 1));
+    long yearLength = 366L * EpochTimeRange.MINUTES_PER_DAY;
+
+    for (int calendarNumber = 0; calendarNumber < 20; calendarNumber++) {
+      List<EpochTimeRange> times = new ArrayList<>();
+      for (int i = 0; i < 2000; i++) {
+        // A few events last for days, the rest for at most two hours.
+        long duration = random.nextInt(10) == 0
+            ? random.nextInt(5 * EpochTimeRange.MINUTES_PER_DAY) : 1 + random.nextInt(120);
+        long start = yearStart + (long) (random.nextDouble() * yearLength);
+        times.add(EpochTimeRange.fromStartDuration(start, duration));
+      }
+      CalendarIndex calendar = new CalendarIndex(Collections.singletonMap(PERSON_A, times));
+
+      for (int i = 0; i < 20; i++) {
+        long windowStart = yearStart + (long) (random.nextDouble() * yearLength);
+        EpochTimeRange window = EpochTimeRange.fromStartDuration(
+            windowStart, 1 + random.nextInt(30 * EpochTimeRange.MINUTES_PER_DAY));
+
+        Assert.assertEquals(
+            busyMinutes(times, window), busyMinutes(calendar.getBusyTimes(Arrays.asList(PERSON_A), window), window));
+      }
+    }
+  }
+
+  /** Returns the minutes within {@code window} that fall in any of {@code times}. */
+  private static List<Long> busyMinutes(List<EpochTimeRange> times, EpochTimeRange window) {
+    boolean[] busy = new boolean[(int) window.duration()];
+    for (EpochTimeRange time : times) {
+      long from = Math.max(time.start(), window.start());
+      long to = Math.min(time.end(), window.end());
+      for (long minute = from; minute < to; minute++) {
+        busy[(int) (minute - window.start())] = true;
+      }
+    }
+    List<Long> minutes = new ArrayList<>();
+    for (int i = 0; i < busy.length; i++) {
+      if (busy[i]) {
+        minutes.add(window.start() + i);
+      }
+    }
+    return minutes;
+  }
+}
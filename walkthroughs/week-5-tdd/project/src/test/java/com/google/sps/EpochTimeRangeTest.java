@@ -0,0 +1,55 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.time.LocalDate;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EpochTimeRangeTest {
+  @Test
+  public void equality() {
+    Assert.assertEquals(
+        EpochTimeRange.fromStartDuration(100, 50), EpochTimeRange.fromStartEnd(100, 150));
+
+    Assert.assertNotEquals(
+        EpochTimeRange.fromStartDuration(100, 50), EpochTimeRange.fromStartDuration(100, 51));
+  }
+
+  @Test
+  public void onDay() {
+    // 1970-01-02 starts one day after the epoch.
+    EpochTimeRange actual =
+        EpochTimeRange.onDay(LocalDate.of(1970, 1, 2), TimeRange.fromStartDuration(60, 30));
+
+    Assert.assertEquals(EpochTimeRange.fromStartDuration(24 * 60 + 60, 30), actual);
+  }
+
+  @Test
+  public void rangesPastIntRange() {
+    // Minutes since the epoch pass Integer.MAX_VALUE in the year 6053.
+    long start = Integer.MAX_VALUE + 10L;
+    EpochTimeRange range = EpochTimeRange.fromStartDuration(start, 60);
+
+    Assert.assertEquals(start + 60, range.end());
+    Assert.assertTrue(range.contains(start + 59));
+    Assert.assertFalse(range.contains(start + 60));
+    Assert.assertTrue(range.overlaps(EpochTimeRange.fromStartDuration(start - 10, 20)));
+  }
+}
@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventIndexTest {
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final TimeRange TIME_0800_0900 =
+      TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(8, 0), TimeRange.getTimeInMinutes(9, 0), false);
+  private static final TimeRange TIME_1100_1200 =
+      TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(11, 0), TimeRange.getTimeInMinutes(12, 0), false);
+
+  @Test
+  public void busyTimesAreSortedByStart() {
+    EventIndex index = new EventIndex(Arrays.asList(
+        new Event("Event 1", TIME_1100_1200, Arrays.asList(PERSON_A)),
+        new Event("Event 2", TIME_0800_0900, Arrays.asList(PERSON_A))));
+
+    List<TimeRange> actual = index.getBusyTimes(PERSON_A);
+    List<TimeRange> expected = Arrays.asList(TIME_0800_0900, TIME_1100_1200);
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void unknownAttendeeIsNeverBusy() {
+    EventIndex index = new EventIndex(Arrays.asList(
+        new Event("Event 1", TIME_0800_0900, Arrays.asList(PERSON_A))));
+
+    Assert.assertEquals(Collections.emptyList(), index.getBusyTimes(PERSON_B));
+    Assert.assertEquals(0, index.getPackedBusyTimes(PERSON_B).length);
+  }
+
+  @Test
+  public void packedTimesSortByStartThenEnd() {
+    int eight = TimeRange.getTimeInMinutes(8, 0);
+    long early = EventIndex.pack(eight, TimeRange.getTimeInMinutes(9, 0));
+    long earlyLonger = EventIndex.pack(eight, TimeRange.getTimeInMinutes(10, 0));
+    long late =
+        EventIndex.pack(TimeRange.getTimeInMinutes(8, 30), TimeRange.getTimeInMinutes(9, 0));
+
+    Assert.assertTrue(early < earlyLonger);
+    Assert.assertTrue(earlyLonger < late);
+    Assert.assertEquals(eight, EventIndex.start(earlyLonger));
+    Assert.assertEquals(TimeRange.getTimeInMinutes(10, 0), EventIndex.end(earlyLonger));
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class FindMeetingQueryBatchTest {
+  private static final List<String> PEOPLE = Arrays.asList("Amelia", "Ava", "Emma", "Isabella",
+      "James", "Liam", "Logan", "Noah", "Oliver", "Olivia");
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private FindMeetingQuery query;
+  private EventIndex index;
+  private ForkJoinPool pool;
+
+  @Before
+  public void setUp() {
+    query = new FindMeetingQuery();
+    index = new EventIndex(Arrays.asList(Events.events));
+    pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void noRequests() {
+    List<Collection<TimeRange>> actual = query.queryAll(index, Collections.emptyList(), pool);
+
+    Assert.assertEquals(Collections.emptyList(), actual);
+  }
+
+  @Test
+  public void answersAreInRequestOrder() {
+    // Enough requests to be split between several tasks, each answered like a single query.
+    List<MeetingRequest> requests = new ArrayList<>();
+    for (int i = 0; i < PEOPLE.size(); i++) {
+      for (int j = 0; j < PEOPLE.size(); j++) {
+        MeetingRequest request =
+            new MeetingRequest(Arrays.asList(PEOPLE.get(i)), DURATION_30_MINUTES * (1 + j % 4));
+        request.addOptionalAttendee(PEOPLE.get(j));
+        requests.add(request);
+      }
+    }
+
+    List<Collection<TimeRange>> actual = query.queryAll(index, requests, pool);
+
+    List<Collection<TimeRange>> expected = new ArrayList<>();
+    for (MeetingRequest request : requests) {
+      expected.add(query.query(index, request));
+    }
+    Assert.assertEquals(expected, actual);
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class FindMeetingQueryEngineTest {
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+  private static final int TIME_1100PM = TimeRange.getTimeInMinutes(23, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+
+  private final FindMeetingQuery sweep = new FindMeetingQuery(FindMeetingQuery.Engine.SWEEP);
+  private final FindMeetingQuery bitmap = new FindMeetingQuery(FindMeetingQuery.Engine.BITMAP);
+
+  @Test
+  public void bitmapSplitsDayAroundEvents() {
+    // Options : |--A--|     |--A--|
+    // Events  :       |--A--|     |--A--|
+    // Day     : |---------------------------------|
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false),
+            Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = bitmap.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+        TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+        TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void bitmapMeasuresLastFreeTimeToEndOfDay() {
+    // The sweep measures the time left in the day up to END_OF_DAY, one minute short of midnight,
+    // so an hour long meeting does not fit into the last hour.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_1100PM, false),
+            Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+
+    Assert.assertEquals(Arrays.asList(), sweep.query(events, request));
+    Assert.assertEquals(Arrays.asList(), bitmap.query(events, request));
+  }
+
+  @Test
+  public void bitmapStopsFreeTimeAtEmptyEvent() {
+    // An event that takes no time still splits the free time around it.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, 0), Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = bitmap.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+        TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void partlyOverlappingOptionsTooShortForMeeting() {
+    // Options for A and for B overlap by less than the meeting, which used to never return.
+    //
+    // Events  : |--A--|     |--A--------------|
+    //           |--B-----|     |--B-----------|
+    // Options :       |--A--|
+    // Day     : |---------------------------------|
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 3", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 4", TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TIME_1000AM, false));
+
+    Assert.assertEquals(expected, sweep.query(events, request));
+    Assert.assertEquals(expected, bitmap.query(events, request));
+  }
+
+  @Test
+  public void bitmapMatchesSweepOnRandomCalendars() {
+    Random random = new Random(42);
+    List<String> people = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      people.add("Person " + i);
+    }
+
+    for (int calendar = 0; calendar < 200; calendar++) {
+      List<Event> events = new ArrayList<>();
+      int eventCount = random.nextInt(20);
+      for (int i = 0; i < eventCount; i++) {
+        // Starts anywhere in the day, including right at its end, with some events taking no time.
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration() + 1);
+        int duration = random.nextInt(4) == 0
+            ? 0 : random.nextInt(TimeRange.WHOLE_DAY.duration() - start + 1);
+        events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, duration),
+            pick(random, people, 1 + random.nextInt(3))));
+      }
+      EventIndex index = new EventIndex(events);
+
+      for (int i = 0; i < 20; i++) {
+        MeetingRequest request = new MeetingRequest(pick(random, people, random.nextInt(3)),
+            random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(300));
+        for (String attendee : pick(random, people, random.nextInt(3))) {
+          request.addOptionalAttendee(attendee);
+        }
+
+        Assert.assertEquals(sweep.query(index, request), bitmap.query(index, request));
+      }
+    }
+  }
+
+  private static List<String> pick(Random random, List<String> people, int count) {
+    List<String> picked = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      picked.add(people.get(random.nextInt(people.size())));
+    }
+    return picked;
+  }
+}
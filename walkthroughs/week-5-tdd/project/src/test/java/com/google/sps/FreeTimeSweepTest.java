@@ -0,0 +1,165 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class FreeTimeSweepTest {
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private FreeTimeSweep sweep;
+  private List<TimeRange> found;
+  private FreeTimeSweep.Sink sink;
+
+  @Before
+  public void setUp() {
+    sweep = new FreeTimeSweep();
+    found = new ArrayList<>();
+    sink = (start, end) -> found.add(TimeRange.fromStartEnd(start, end, false));
+  }
+
+  @Test
+  public void mergesBusyTimesOfEveryAttendee() {
+    // Events  :       |--A--|  |--C--|
+    //                    |--B--|
+    // Free    : |--A-B--|             |--A-B-------|
+    EventIndex index = new EventIndex(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false),
+            Arrays.asList(PERSON_C))));
+
+    sweep.findFreeTimes(index, Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES, sink);
+
+    List<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+        TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true));
+    Assert.assertEquals(expected, found);
+  }
+
+  @Test
+  public void sharedEventIsOnlyBusyOnce() {
+    // Events  :       |--A-B--|
+    // Free    : |-----|       |-------------|
+    EventIndex index = new EventIndex(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A, PERSON_B))));
+
+    sweep.findFreeTimes(index, Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES, sink);
+
+    List<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+        TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true));
+    Assert.assertEquals(expected, found);
+  }
+
+  @Test
+  public void freeTimesMatchScanOfEveryEvent() {
+    // Every pair of people in the sample calendar is checked against the minutes left free by a
+    // scan of all the events.
+    List<String> people = Arrays.asList("Amelia", "Ava", "Emma", "Isabella", "James", "Liam",
+        "Logan", "Noah", "Oliver", "Olivia");
+    EventIndex index = new EventIndex(Arrays.asList(Events.events));
+
+    for (int i = 0; i < people.size(); i++) {
+      for (int j = i + 1; j < people.size(); j++) {
+        List<String> attendees = Arrays.asList(people.get(i), people.get(j));
+        boolean[] busy = new boolean[TimeRange.WHOLE_DAY.duration()];
+        for (Event event : Events.events) {
+          if (!Collections.disjoint(event.getAttendees(), attendees)) {
+            Arrays.fill(busy, event.getWhen().start(), event.getWhen().end(), true);
+          }
+        }
+        List<TimeRange> expected = new ArrayList<>();
+        for (int start = 0; start < busy.length; ) {
+          int end = start;
+          while (end < busy.length && !busy[end]) {
+            end++;
+          }
+          if (end - start >= DURATION_30_MINUTES) {
+            expected.add(TimeRange.fromStartEnd(start, end, false));
+          }
+          start = end + 1;
+        }
+
+        found.clear();
+        sweep.findFreeTimes(index, attendees, DURATION_30_MINUTES, sink);
+
+        Assert.assertEquals(expected, found);
+      }
+    }
+  }
+
+  @Test
+  public void attendeesWithoutEventsAreFreeAllDay() {
+    EventIndex index = new EventIndex(Collections.emptyList());
+
+    sweep.findFreeTimes(index, Arrays.asList(PERSON_A), DURATION_30_MINUTES, sink);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), found);
+  }
+
+  @Test
+  public void reusedSweepMatchesNewSweep() {
+    // Buffers grown by a large group must not leak busy times into the next, smaller one.
+    Random random = new Random(7);
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - 60);
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, 1 + random.nextInt(60)),
+          Arrays.asList("Person " + random.nextInt(50))));
+    }
+    EventIndex index = new EventIndex(events);
+
+    for (int i = 0; i < 100; i++) {
+      List<String> attendees = new ArrayList<>();
+      for (int j = random.nextInt(i % 2 == 0 ? 40 : 3); j >= 0; j--) {
+        attendees.add("Person " + random.nextInt(50));
+      }
+
+      found.clear();
+      sweep.findFreeTimes(index, attendees, DURATION_30_MINUTES, sink);
+      List<TimeRange> expected = new ArrayList<>();
+      new FreeTimeSweep().findFreeTimes(index, attendees, DURATION_30_MINUTES,
+          (start, end) -> expected.add(TimeRange.fromStartEnd(start, end, false)));
+
+      Assert.assertEquals(expected, found);
+    }
+  }
+}
@@ -44,4 +44,14 @@ public final class MeetingRequestTest {
     int expected = 0;
     Assert.assertEquals(expected, actual);
   }
+
+  @Test
+  public void horizonIsOptional() {
+    EpochTimeRange horizon = EpochTimeRange.fromStartDuration(0, 30 * 24 * 60);
+
+    Assert.assertFalse(
+        new MeetingRequest(Arrays.asList(PERSON_A), DURATION_1_HOUR).getHorizon().isPresent());
+    Assert.assertEquals(horizon,
+        new MeetingRequest(Arrays.asList(PERSON_A), DURATION_1_HOUR, horizon).getHorizon().get());
+  }
 }
\ No newline at end of file